@@ -14,23 +14,32 @@
  ************************************************************************************/
 package org.spin.report_engine.controller;
 
+import org.adempiere.exceptions.AdempiereException;
 import org.compiere.util.CLogger;
 import org.spin.backend.grpc.report_engine.ReportEngineGrpc.ReportEngineImplBase;
 import org.spin.report_engine.service.Service;
+import org.spin.backend.grpc.report_engine.GetRecordCountRequest;
 import org.spin.backend.grpc.report_engine.GetReportRequest;
 import org.spin.backend.grpc.report_engine.GetSystemInfoRequest;
+import org.spin.backend.grpc.report_engine.RecordCount;
 import org.spin.backend.grpc.report_engine.Report;
+import org.spin.backend.grpc.report_engine.ReportStreamResponse;
+import org.spin.backend.grpc.report_engine.ResetCacheRequest;
+import org.spin.backend.grpc.report_engine.ResetCacheResponse;
 import org.spin.backend.grpc.report_engine.RunExportRequest;
 import org.spin.backend.grpc.report_engine.RunExportResponse;
 import org.spin.backend.grpc.report_engine.SystemInfo;
 
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
 public class ReportService extends ReportEngineImplBase {
 
 	/**	Logger			*/
 	private CLogger log = CLogger.getCLogger(ReportService.class);
+	/**	Wait between checks of ready client	*/
+	private static final long READY_WAIT_MILLISECONDS = 10;
 
 
 	@Override
@@ -87,6 +96,85 @@ public class ReportService extends ReportEngineImplBase {
 		}
 	}
 
+	@Override
+	public void resetCache(ResetCacheRequest request, StreamObserver<ResetCacheResponse> responseObserver) {
+		try {
+			ResetCacheResponse.Builder response = Service.resetCache(request);
+			responseObserver.onNext(response.build());
+			responseObserver.onCompleted();
+		} catch (Exception e) {
+			log.warning(e.getLocalizedMessage());
+			e.printStackTrace();
+			responseObserver.onError(
+				Status.INTERNAL
+					.withDescription(e.getLocalizedMessage())
+					.withCause(e)
+					.asRuntimeException()
+			);
+		}
+	}
+
+	@Override
+	public void getRecordCount(GetRecordCountRequest request, StreamObserver<RecordCount> responseObserver) {
+		try {
+			RecordCount.Builder recordCount = Service.getRecordCount(request);
+			responseObserver.onNext(recordCount.build());
+			responseObserver.onCompleted();
+		} catch (Exception e) {
+			log.warning(e.getLocalizedMessage());
+			e.printStackTrace();
+			responseObserver.onError(
+				Status.INTERNAL
+					.withDescription(e.getLocalizedMessage())
+					.withCause(e)
+					.asRuntimeException()
+			);
+		}
+	}
+
+	@Override
+	public void getReportStream(GetReportRequest request, StreamObserver<ReportStreamResponse> responseObserver) {
+		ServerCallStreamObserver<ReportStreamResponse> serverObserver = (ServerCallStreamObserver<ReportStreamResponse>) responseObserver;
+		try {
+			//	Batches are sent while rows are read, waiting while client is not ready to receive
+			Service.getReportStream(request, response -> {
+				waitUntilReady(serverObserver);
+				serverObserver.onNext(response);
+			});
+			serverObserver.onCompleted();
+		} catch (Exception e) {
+			log.warning(e.getLocalizedMessage());
+			e.printStackTrace();
+			if(!serverObserver.isCancelled()) {
+				serverObserver.onError(
+					Status.INTERNAL
+						.withDescription(e.getLocalizedMessage())
+						.withCause(e)
+						.asRuntimeException()
+				);
+			}
+		}
+	}
+
+	/**
+	 * Wait until client is ready to receive. The on ready handler is not used because the
+	 * callbacks of call are serialized with this method, then the state is polled
+	 * @param serverObserver
+	 */
+	private void waitUntilReady(ServerCallStreamObserver<ReportStreamResponse> serverObserver) {
+		try {
+			while (!serverObserver.isReady()) {
+				if(serverObserver.isCancelled()) {
+					throw new AdempiereException("@Cancelled@");
+				}
+				Thread.sleep(READY_WAIT_MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AdempiereException(e);
+		}
+	}
+
 	@Override
 	public void runExport(RunExportRequest request, StreamObserver<RunExportResponse> responseObserver) {
 		try {
@@ -16,7 +16,6 @@ package org.spin.report_engine.data;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
 
 import org.compiere.util.Env;
 import org.compiere.util.Util;
@@ -37,6 +36,8 @@ public class Cell {
 	private String displayValue;
 	/**	Function	*/
 	private SummaryFunction function;
+	/**	Display values are already processed by mapping	*/
+	private boolean isFormatted;
 
 	private Cell() {
 		
@@ -113,7 +114,7 @@ public class Cell {
 
 	public String getCompareValue() {
 		if(value instanceof Timestamp && value != null) {
-			return new SimpleDateFormat("yyyy-MM-dd").format((Timestamp) value);
+			return ((Timestamp) value).toLocalDateTime().toLocalDate().toString();
 		}
 		if(Util.isEmpty(displayValue)) {
 			if(value != null) {
@@ -136,6 +137,23 @@ public class Cell {
 		return this;
 	}
 
+	/**
+	 * Display values are already processed by mapping, it is not mapped again
+	 * @return
+	 */
+	public boolean isFormatted() {
+		return isFormatted;
+	}
+
+	public Cell withFormatted(boolean isFormatted) {
+		this.isFormatted = isFormatted;
+		return this;
+	}
+
+	SummaryFunction getFunction() {
+		return function;
+	}
+
 	public Cell withFunction(SummaryFunction function) {
 		this.function = function;
 		return this;
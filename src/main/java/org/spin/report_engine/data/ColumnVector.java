@@ -0,0 +1,152 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.data;
+
+import java.util.Arrays;
+
+/**
+ * Typed column of a result store: values are kept in primitive arrays indexed by row
+ * and the nulls in a bitmap, then a row does not need an object by value.
+ * Each implementation accept a value type, other types promote the column to object
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+abstract class ColumnVector {
+
+	/**	Initial capacity of arrays	*/
+	protected static final int INITIAL_CAPACITY = 64;
+	/**	Null bitmap, a bit on is a null value	*/
+	private long[] nulls = new long[0];
+	/**	Number of rows	*/
+	private int size;
+
+	/**
+	 * Get a vector for type of value
+	 * @param value
+	 * @return
+	 */
+	static ColumnVector newVector(Object value) {
+		if(value instanceof Integer) {
+			return new IntegerVector();
+		}
+		if(value instanceof Long) {
+			return new LongVector();
+		}
+		if(value instanceof Double) {
+			return new DoubleVector();
+		}
+		if(value instanceof java.math.BigDecimal) {
+			return new DecimalVector();
+		}
+		if(value instanceof java.sql.Timestamp) {
+			return new TimestampVector();
+		}
+		if(value instanceof String) {
+			return new StringVector();
+		}
+		return new ObjectVector();
+	}
+
+	/**
+	 * Number of rows of vector
+	 * @return
+	 */
+	int getSize() {
+		return size;
+	}
+
+	/**
+	 * Validate if a value can be stored without promote vector
+	 * @param value
+	 * @return
+	 */
+	abstract boolean isSupported(Object value);
+
+	/**
+	 * Get value for a row
+	 * @param index
+	 * @return
+	 */
+	Object getValue(int index) {
+		if(isNull(index)) {
+			return null;
+		}
+		return getNotNullValue(index);
+	}
+
+	/**
+	 * Set value for a row, the value must be supported
+	 * @param index
+	 * @param value
+	 */
+	void setValue(int index, Object value) {
+		ensureCapacity(index + 1);
+		if(index >= size) {
+			size = index + 1;
+		}
+		if(value == null) {
+			nulls[index >>> 6] |= (1L << index);
+			clearValue(index);
+		} else {
+			nulls[index >>> 6] &= ~(1L << index);
+			setNotNullValue(index, value);
+		}
+	}
+
+	boolean isNull(int index) {
+		if(index >= size) {
+			return true;
+		}
+		return (nulls[index >>> 6] & (1L << index)) != 0;
+	}
+
+	private void ensureCapacity(int capacity) {
+		int words = ((capacity - 1) >>> 6) + 1;
+		if(words > nulls.length) {
+			//	New positions are null until a value is set
+			int previousLength = nulls.length;
+			nulls = Arrays.copyOf(nulls, Math.max(words, previousLength * 2));
+			Arrays.fill(nulls, previousLength, nulls.length, -1L);
+		}
+		ensureValueCapacity(capacity);
+	}
+
+	/**
+	 * Grow capacity for values
+	 * @param capacity
+	 */
+	protected abstract void ensureValueCapacity(int capacity);
+
+	/**
+	 * New capacity for arrays
+	 * @param currentCapacity
+	 * @param capacity
+	 * @return
+	 */
+	protected static int getNewCapacity(int currentCapacity, int capacity) {
+		return Math.max(capacity, Math.max(INITIAL_CAPACITY, currentCapacity + (currentCapacity >> 1)));
+	}
+
+	protected abstract Object getNotNullValue(int index);
+
+	protected abstract void setNotNullValue(int index, Object value);
+
+	/**
+	 * Release reference of a value when it is changed to null
+	 * @param index
+	 */
+	protected void clearValue(int index) {
+
+	}
+}
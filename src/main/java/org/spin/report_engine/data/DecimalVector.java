@@ -0,0 +1,82 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.data;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Column of decimal values: the unscaled value is kept as long and the scale as byte,
+ * a value that does not fit (more than 18 digits) is kept as object
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+class DecimalVector extends ColumnVector {
+
+	private long[] unscaledValues = new long[0];
+	private byte[] scales = new byte[0];
+	/**	Values that does not fit in long	*/
+	private Map<Integer, BigDecimal> largeValues;
+
+	@Override
+	boolean isSupported(Object value) {
+		return value == null || value instanceof BigDecimal;
+	}
+
+	@Override
+	protected void ensureValueCapacity(int capacity) {
+		if(capacity > unscaledValues.length) {
+			int newCapacity = getNewCapacity(unscaledValues.length, capacity);
+			unscaledValues = Arrays.copyOf(unscaledValues, newCapacity);
+			scales = Arrays.copyOf(scales, newCapacity);
+		}
+	}
+
+	@Override
+	protected Object getNotNullValue(int index) {
+		if(largeValues != null) {
+			BigDecimal value = largeValues.get(index);
+			if(value != null) {
+				return value;
+			}
+		}
+		return BigDecimal.valueOf(unscaledValues[index], scales[index]);
+	}
+
+	@Override
+	protected void setNotNullValue(int index, Object value) {
+		BigDecimal decimalValue = (BigDecimal) value;
+		if(decimalValue.unscaledValue().bitLength() < 64
+				&& decimalValue.scale() >= Byte.MIN_VALUE
+				&& decimalValue.scale() <= Byte.MAX_VALUE) {
+			unscaledValues[index] = decimalValue.unscaledValue().longValue();
+			scales[index] = (byte) decimalValue.scale();
+			clearValue(index);
+		} else {
+			if(largeValues == null) {
+				largeValues = new HashMap<Integer, BigDecimal>();
+			}
+			largeValues.put(index, decimalValue);
+		}
+	}
+
+	@Override
+	protected void clearValue(int index) {
+		if(largeValues != null) {
+			largeValues.remove(index);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.data;
+
+import java.util.Arrays;
+
+/**
+ * Composite key of group values, the hash is computed once and
+ * the values are compared by equals (null is equal to null)
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class GroupKey {
+
+	private final Object[] values;
+	private final int hash;
+
+	private GroupKey(Object[] values) {
+		this.values = values;
+		this.hash = Arrays.hashCode(values);
+	}
+
+	/**
+	 * Key with first values
+	 * @param values
+	 * @param length
+	 * @return
+	 */
+	public static GroupKey newInstance(Object[] values, int length) {
+		return new GroupKey(Arrays.copyOf(values, length));
+	}
+
+	public int getSize() {
+		return values.length;
+	}
+
+	public Object getValue(int index) {
+		return values[index];
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if(this == object) {
+			return true;
+		}
+		if(!(object instanceof GroupKey)) {
+			return false;
+		}
+		GroupKey key = (GroupKey) object;
+		return hash == key.hash && Arrays.equals(values, key.values);
+	}
+
+	@Override
+	public String toString() {
+		return "GroupKey " + Arrays.toString(values);
+	}
+}
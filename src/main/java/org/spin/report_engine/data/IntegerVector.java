@@ -0,0 +1,48 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.data;
+
+import java.util.Arrays;
+
+/**
+ * Column of integer values (identifiers and quantities of records)
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+class IntegerVector extends ColumnVector {
+
+	private int[] values = new int[0];
+
+	@Override
+	boolean isSupported(Object value) {
+		return value == null || value instanceof Integer;
+	}
+
+	@Override
+	protected void ensureValueCapacity(int capacity) {
+		if(capacity > values.length) {
+			values = Arrays.copyOf(values, getNewCapacity(values.length, capacity));
+		}
+	}
+
+	@Override
+	protected Object getNotNullValue(int index) {
+		return values[index];
+	}
+
+	@Override
+	protected void setNotNullValue(int index, Object value) {
+		values[index] = (Integer) value;
+	}
+}
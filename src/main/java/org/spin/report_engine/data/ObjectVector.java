@@ -0,0 +1,67 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.data;
+
+import java.util.Arrays;
+
+/**
+ * Column of any value, it is used for types without primitive representation
+ * and for columns with values of different types
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+class ObjectVector extends ColumnVector {
+
+	private Object[] values = new Object[0];
+
+	/**
+	 * Copy values of other vector
+	 * @param vector
+	 * @return
+	 */
+	static ObjectVector copyOf(ColumnVector vector) {
+		ObjectVector objectVector = new ObjectVector();
+		for (int index = 0; index < vector.getSize(); index++) {
+			objectVector.setValue(index, vector.getValue(index));
+		}
+		return objectVector;
+	}
+
+	@Override
+	boolean isSupported(Object value) {
+		return true;
+	}
+
+	@Override
+	protected void ensureValueCapacity(int capacity) {
+		if(capacity > values.length) {
+			values = Arrays.copyOf(values, getNewCapacity(values.length, capacity));
+		}
+	}
+
+	@Override
+	protected Object getNotNullValue(int index) {
+		return values[index];
+	}
+
+	@Override
+	protected void setNotNullValue(int index, Object value) {
+		values[index] = value;
+	}
+
+	@Override
+	protected void clearValue(int index) {
+		values[index] = null;
+	}
+}
@@ -14,27 +14,27 @@
  ************************************************************************************/
 package org.spin.report_engine.data;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.compiere.util.Language;
-import org.compiere.util.Util;
 import org.spin.report_engine.format.PrintFormat;
 import org.spin.report_engine.format.PrintFormatItem;
 import org.spin.report_engine.format.QueryDefinition;
-import org.spin.report_engine.mapper.DefaultMapping;
 import org.spin.report_engine.mapper.IColumnMapping;
-import org.spin.report_engine.util.ClassLoaderMapping;
+import org.spin.report_engine.mapper.MappingRegistry;
 
 
 /**
@@ -49,12 +49,16 @@ public class ReportInfo {
 	private List<Row> rows;
 	private List<Row> summaryRows;
 	private List<Row> groupedRows;
-	private Row temporaryRow;
+	private ResultStore store;
+	private boolean isPendingRow;
+	private ReportSummary reportSummary;
+	private Row grandTotalRow;
 	private int printFormatId;
 	private int reportViewId;
 	private boolean isSummary;
 	private SummaryHandler summaryHandler;
 	private List<PrintFormatItem> sortingItems;
+	private RowSorter sorter;
 	private int level;
 	private Map<Integer, PrintFormatItem> groupLevels;
 	private QueryDefinition queryDefinition;
@@ -62,6 +66,9 @@ public class ReportInfo {
 	private int instanceId;
 	private PrintFormat printFormat;
 	private String tableName;
+	private String nextPageToken;
+	private boolean isApproximateCount;
+	private String countToken;
 
 	private ReportInfo(PrintFormat printFormat, QueryDefinition queryDefinition) {
 		this.printFormat = printFormat;
@@ -75,9 +82,14 @@ public class ReportInfo {
 			.collect(Collectors.toList())
 		;
 		rows = new ArrayList<Row>();
+		store = ResultStore.newInstance(printFormat.getItems());
 		summaryRows = new ArrayList<Row>();
 		groupedRows = new ArrayList<Row>();
 		summaryHandler = SummaryHandler.newInstance(printFormat.getItems());
+		//	Summary rows are added with rows when query is sorted by groups
+		if(queryDefinition != null && queryDefinition.isOrderedByGroups()) {
+			summaryHandler.withStreaming(summaryRow -> rows.add(summaryRow));
+		}
 		level = printFormat.getGroupItems()
 			.stream()
 			.mapToInt(item -> {
@@ -175,49 +187,72 @@ public class ReportInfo {
 		return this;
 	}
 	public ReportInfo addRow(int level, int sequence) {
-		if(temporaryRow != null) {
-			addRow(
-				Row.newInstance()
-					.withLevel(level)
-					.withCells(temporaryRow.getData())
-					.withSequence(sequence)
-			);
-			summaryHandler.addRow(
-				Row.newInstance()
-					.withLevel(level)
-					.withSummaryRow(true)
-					.withCells(temporaryRow.getData())
-			);
+		if(isPendingRow) {
+			Row row = Row.newInstance(store, store.addRow())
+				.withLevel(level)
+				.withSequence(sequence)
+			;
+			summaryHandler.addRow(row);
+			addRow(row);
+			isPendingRow = false;
 		}
-		temporaryRow = Row.newInstance().withLevel(level);
 		return this;
 	}
 	public ReportInfo addRow() {
-		if(temporaryRow != null) {
-			addRow(
-				Row.newInstance()
-					.withLevel(getLevel())
-					.withCells(temporaryRow.getData())
-			);
-			summaryHandler.addRow(
-				Row.newInstance()
-					.withLevel(getLevel())
-					.withSummaryRow(true)
-					.withCells(temporaryRow.getData())
-			);
+		if(isPendingRow) {
+			Row row = Row.newInstance(store, store.addRow())
+				.withLevel(getLevel())
+			;
+			summaryHandler.addRow(row);
+			addRow(row);
+			isPendingRow = false;
 		}
-		temporaryRow = Row.newInstance().withLevel(getLevel());
 		return this;
 	}
 
+	public ReportSummary getReportSummary() {
+		return reportSummary;
+	}
+
+	/**
+	 * Summary of all rows calculated by database, it replace the summary of rows read
+	 * (a page) and it is used as rows for summary report
+	 * @param reportSummary
+	 * @return
+	 */
+	public ReportInfo withReportSummary(ReportSummary reportSummary) {
+		this.reportSummary = reportSummary;
+		return this;
+	}
+
+	/**
+	 * Grand total of summarized items, null if report has not summarized items
+	 * @return
+	 */
+	public Row getGrandTotalRow() {
+		return grandTotalRow;
+	}
+
+	/**
+	 * Add a cell to row that is being read, the row is added to store with addRow
+	 * @param printFormatItem
+	 * @param cell
+	 * @return
+	 */
 	public ReportInfo addCell(PrintFormatItem printFormatItem, Cell cell) {
-		if(temporaryRow == null) {
-			temporaryRow = Row.newInstance().withLevel(getLevel());
-		}
-		temporaryRow.withCell(printFormatItem.getPrintFormatItemId(), cell);
+		store.setCell(printFormatItem.getPrintFormatItemId(), store.getSize(), cell);
+		isPendingRow = true;
 		return this;
 	}
 
+	/**
+	 * Columnar store of rows read
+	 * @return
+	 */
+	public ResultStore getStore() {
+		return store;
+	}
+
 	public List<Row> getRows() {
 		return rows;
 	}
@@ -238,29 +273,10 @@ public class ReportInfo {
 	}
 
 	private Comparator<Row> getSortingValue(boolean summaryAtEnd) {
-		AtomicReference<Comparator<Row>> comparator = new AtomicReference<>();
-		sortingItems.forEach(printFormatItem -> {
-			Comparator<Row> groupComparator = (p, o) -> p.getCompareValue(printFormatItem.getPrintFormatItemId()).compareToIgnoreCase(o.getCompareValue(printFormatItem.getPrintFormatItemId()));
-			if(comparator.get() == null) {
-				comparator.set(groupComparator);
-			} else {
-				comparator.getAndUpdate(value -> value.thenComparing(groupComparator));
-			}
-		});
-		if(comparator.get() != null) {
-			if(!summaryAtEnd) {
-				comparator.getAndUpdate(value -> value.thenComparing(Comparator.comparing(Row::getLevel)));
-			} else {
-				comparator.getAndUpdate(value -> value.thenComparing(Comparator.comparing(Row::getLevel).reversed()));
-			}
-		} else {
-			if(!summaryAtEnd) {
-				comparator.set(Comparator.comparing(Row::getLevel).reversed());
-			} else {
-				comparator.set(Comparator.comparing(Row::getLevel));
-			}
+		if(sorter == null) {
+			sorter = RowSorter.newInstance(sortingItems, Language.getLoginLanguage());
 		}
-		return comparator.get();
+		return sorter.getComparator(summaryAtEnd);
 	}
 
 	public PrintFormat getPrintFormat() {
@@ -270,26 +286,50 @@ public class ReportInfo {
 	public ReportInfo completeInfo() {
 		Map<Integer, Integer> columnLength = new HashMap<>();
 		groupedRows = summaryHandler.getAsRows();
-		List<Row> completeRows = Stream.concat(getRows().stream(), groupedRows.stream())
-			.sorted(getSortingValue(false))
-			.collect(Collectors.toList())
-		;
+		List<Row> completeRows;
+		if(reportSummary != null) {
+			reportSummary.getTotals().forEach(summaryHandler::withTotal);
+		}
+		if(reportSummary != null && isSummary()) {
+			//	Summary rows from database are sorted by groups
+			groupedRows = reportSummary.getRows();
+			completeRows = new ArrayList<Row>(groupedRows);
+		} else if(summaryHandler.isStreaming()) {
+			//	Summary rows are already before rows of each group
+			completeRows = getRows();
+		} else {
+			completeRows = Stream.concat(getRows().stream(), groupedRows.stream())
+				.sorted(getSortingValue(false))
+				.collect(Collectors.toList())
+			;
+		}
+		//	Summary of groups over all rows instead of rows read
+		if(reportSummary != null && !isSummary()) {
+			groupedRows.forEach(groupRow -> {
+				Row summaryRow = reportSummary.getGroupRow(groupRow);
+				if(summaryRow != null) {
+					summaryHandler.getSummarizedItems().forEach(item -> {
+						groupRow.withCell(item.getPrintFormatItemId(), summaryRow.getCell(item.getPrintFormatItemId()));
+					});
+				}
+			});
+		}
 		Language language = Language.getLoginLanguage();
 		rows = new ArrayList<Row>();
 		summaryRows = new ArrayList<Row>();
-		completeRows.forEach(row -> {
-			Row newRow = Row.newInstance().withSourceRowDefinition(row);
+		MappingRegistry.RequestScope mappings = MappingRegistry.getInstance().newRequestScope();
+		//	Rows are reused, the stored cells are changed in store
+		completeRows.forEach(newRow -> {
 			//	Items
 			printFormat.getItems().forEach(printFormatItem -> {
-				Cell cell = row.getCell(printFormatItem.getPrintFormatItemId());
-				//	Apply Default Mask
-				if(!Util.isEmpty(printFormatItem.getMappingClassName())) {
-					IColumnMapping customMapping = ClassLoaderMapping.loadClass(printFormatItem.getMappingClassName());
-					if(customMapping != null) {
-						customMapping.processValue(printFormatItem, language, cell);
+				Cell cell = newRow.getCell(printFormatItem.getPrintFormatItemId());
+				//	Apply Mask, the cells of rows read are already mapped
+				if(!cell.isFormatted()) {
+					IColumnMapping mapping = mappings.getMapping(printFormatItem.getMappingClassName());
+					if(mapping != null) {
+						mapping.processValue(printFormatItem, language, cell);
 					}
-				} else {
-					DefaultMapping.newInstance().processValue(printFormatItem, language, cell);
+					cell.withFormatted(true);
 				}
 				int newLength = Optional.ofNullable(cell.getDisplayValue()).orElse("").length();
 				if(columnLength.containsKey(printFormatItem.getPrintFormatItemId())) {
@@ -307,6 +347,8 @@ public class ReportInfo {
 				summaryRows.add(newRow);
 			}
 		});
+		//	Grand total
+		withGrandTotal(summaryHandler.getTotals());
 
 		if (columnLength == null || columnLength.isEmpty()) {
 			return this;
@@ -321,128 +363,165 @@ public class ReportInfo {
 		return this;
 	}
 
+	/**
+	 * Set grand total row from totals by print format item, it is used without
+	 * complete info when the rows are not kept
+	 * @param totals
+	 * @return
+	 */
+	public ReportInfo withGrandTotal(Map<Integer, SummaryFunction> totals) {
+		grandTotalRow = null;
+		if(totals.isEmpty()) {
+			return this;
+		}
+		Language language = Language.getLoginLanguage();
+		MappingRegistry.RequestScope mappings = MappingRegistry.getInstance().newRequestScope();
+		Row totalRow = Row.newInstance().withSummaryRow(true);
+		summaryHandler.getSummarizedItems().stream()
+			.filter(item -> !item.isHideGrandTotal() && totals.containsKey(item.getPrintFormatItemId()))
+			.forEach(item -> {
+				SummaryFunction function = totals.get(item.getPrintFormatItemId());
+				Cell cell = Cell.newInstance().withValue(function.getSumValue()).withFunction(function);
+				IColumnMapping mapping = mappings.getMapping(item.getMappingClassName());
+				if(mapping != null) {
+					mapping.processValue(item, language, cell);
+				}
+				cell.withFormatted(true);
+				totalRow.withCell(item.getPrintFormatItemId(), cell);
+			})
+		;
+		grandTotalRow = totalRow;
+		return this;
+	}
+
 	private boolean isFinancialReport() {
 		return getTableName().equals("T_Report");
 	}
 
 	/**
-	 * Get all rows as tree
+	 * Get all rows as tree, the rows are indexed by level and group values, then each
+	 * row is visited a fixed number of times instead of scan all rows for each parent
 	 * @return
 	 */
 	public List<Row> getRowsAsTree() {
+		rows.forEach(row -> row.clearChildren());
 		if(isFinancialReport()) {
-			List<Row> tree = new ArrayList<Row>();
-			//	Add parent level
-			rows.stream()
-				.filter(row -> {
-					return row.getLevel() == 0;
-				}).forEach(row -> {
-					tree.add(row);
-				})
-			;
-			tree.forEach(treeValue -> {
-				processChildrenFinancialReport(treeValue, 1);
-			});
-			return tree;
-		} else {
-			PrintFormatItem levelGroup = groupLevels.get(0);
-			if(levelGroup != null) {
-				List<Row> tree = new ArrayList<Row>();
-				//	Add parent level
-				rows.stream()
-					.filter(row -> {
-						return row.getLevel() == levelGroup.getSortSequence();
-					})
-					.forEach(row -> {
-						tree.add(row);
-					})
-				;
-				tree.forEach(treeValue -> {
-					processChildren(treeValue, 1);
-				});
-				return tree;
+			return getFinancialReportTree();
+		}
+		PrintFormatItem levelGroup = groupLevels.get(0);
+		if(levelGroup == null) {
+			return rows;
+		}
+		//	Rows by level, keeping sorting
+		Map<Integer, List<Row>> rowsByLevel = new HashMap<Integer, List<Row>>();
+		List<Row> detailRows = new ArrayList<Row>();
+		int lastGroupLevel = groupLevels.size() - 1;
+		rows.forEach(row -> {
+			if(row.getLevel() > groupLevels.get(lastGroupLevel).getSortSequence()) {
+				detailRows.add(row);
 			}
+			rowsByLevel.computeIfAbsent(row.getLevel(), level -> new ArrayList<Row>()).add(row);
+		});
+		List<Row> tree = new ArrayList<Row>(
+			Optional.ofNullable(rowsByLevel.get(levelGroup.getSortSequence())).orElse(new ArrayList<Row>())
+		);
+		List<Row> parents = tree;
+		//	Group levels: children of a level are summary rows of next level with same values of parent groups
+		for (int groupIndex = 1; groupIndex < groupLevels.size(); groupIndex++) {
+			List<Row> levelRows = Optional.ofNullable(rowsByLevel.get(groupLevels.get(groupIndex).getSortSequence())).orElse(new ArrayList<Row>());
+			parents = addChildren(parents, levelRows, groupIndex);
 		}
-		return rows;
+		//	Last group level: children are all rows with deep level and same values of all groups
+		addChildren(parents, detailRows, groupLevels.size());
+		return tree;
 	}
 
-	private void processChildrenFinancialReport(Row parent, int levelAsInt) {
-		List<Row> children = parent.getChildren();
-		rows.stream()
-			.filter(row -> {
-				return row.getLevel() == levelAsInt 
-					&& row.getSequence() == parent.getSequence()
-				;
-			})
-			.forEach(row -> {
-				children.add(row);
-			})
-		;
-		int nextLevel = levelAsInt + 1;
-		children.forEach(child -> processChildrenFinancialReport(child, nextLevel));
-	}
-
-	private void processChildren(Row parent, int levelAsInt) {
-		List<Row> children = parent.getChildren();
-		PrintFormatItem previosLevelGroup = groupLevels.get(levelAsInt - 1);
-		PrintFormatItem levelGroup = groupLevels.get(levelAsInt);
-		if((levelGroup == null && groupLevels.size() > 1) || previosLevelGroup == null) {
-			return;
+	/**
+	 * Add children to parents with same values for first groups
+	 * @param parents
+	 * @param candidates
+	 * @param groupCount
+	 * @return children added
+	 */
+	private List<Row> addChildren(List<Row> parents, List<Row> candidates, int groupCount) {
+		Map<List<Object>, List<Row>> parentsByGroup = new HashMap<List<Object>, List<Row>>();
+		parents.forEach(parent -> {
+			List<Object> key = getGroupKey(parent, groupCount);
+			if(key != null) {
+				parentsByGroup.computeIfAbsent(key, groupKey -> new ArrayList<Row>()).add(parent);
+			}
+		});
+		List<Row> children = new ArrayList<Row>();
+		if(parentsByGroup.isEmpty()) {
+			return children;
 		}
-		rows.stream()
-			.filter(row -> {
-				if(levelGroup == null && row.getLevel() > parent.getLevel() && compareRows(parent, row, levelAsInt)) {
-					return true;
-				}
-				if(levelGroup != null && row.getLevel() == levelGroup.getSortSequence() && compareRows(parent, row, levelAsInt)) {
-					return true;
+		candidates.forEach(candidate -> {
+			List<Object> key = getGroupKey(candidate, groupCount);
+			if(key == null) {
+				return;
+			}
+			List<Row> matchedParents = parentsByGroup.get(key);
+			if(matchedParents == null) {
+				return;
+			}
+			matchedParents.forEach(parent -> {
+				if(candidate.getLevel() > parent.getLevel()) {
+					parent.addChildren(candidate);
 				}
-				return false;
-			})
-			.forEach(row -> {
-				children.add(row);
-			})
-		;
-		//	No Recursive
-		if(groupLevels.size() == 1) {	
-			return;
-		}
-		int nextLevel = levelAsInt + 1;
-		if(nextLevel < groupLevels.size()) {
-			children.forEach(child -> processChildren(child, nextLevel));
-		} else {
-			children.forEach(child -> processAllChildren(child));
-		}
+			});
+			children.add(candidate);
+		});
+		return children;
 	}
 
-	private void processAllChildren(Row parent) {
-		List<Row> children = parent.getChildren();
-		PrintFormatItem previosLevelGroup = groupLevels.get(groupLevels.size() - 1);
-		if(previosLevelGroup == null) {
-			return;
+	/**
+	 * Values of first groups of a row, a null value is never matched
+	 * @param row
+	 * @param groupCount
+	 * @return
+	 */
+	private List<Object> getGroupKey(Row row, int groupCount) {
+		List<Object> key = new ArrayList<Object>(groupCount);
+		for (int levelIndex = 0; levelIndex < groupCount; levelIndex++) {
+			PrintFormatItem levelGroup = groupLevels.get(levelIndex);
+			Object value = row.getCell(levelGroup.getPrintFormatItemId()).getValue();
+			if(value == null) {
+				return null;
+			}
+			key.add(value);
 		}
-		rows.stream()
-			.filter(row -> {
-				return row.getLevel() > parent.getLevel()
-					&& compareRows(parent, row, groupLevels.size())
-				;
-			})
-			.forEach(row -> {
-				children.add(row);
-			})
-		;
+		return key;
 	}
 
-	private boolean compareRows(Row parent, Row child, int currentLevel) {
-		AtomicBoolean isMatched = new AtomicBoolean(true);
-		IntStream.range(0, currentLevel).forEach(levelIndex -> {
-			PrintFormatItem levelGroup = groupLevels.get(levelIndex);
-			boolean isOk = parent.getCell(levelGroup.getPrintFormatItemId()).equals(child.getCell(levelGroup.getPrintFormatItemId()));
-			if(!isOk) {
-				isMatched.set(false);
+	/**
+	 * Financial report tree: the children of a row are rows of next level with same sequence
+	 * @return
+	 */
+	private List<Row> getFinancialReportTree() {
+		Map<String, List<Row>> rowsByLevelAndSequence = new HashMap<String, List<Row>>();
+		List<Row> tree = new ArrayList<Row>();
+		rows.forEach(row -> {
+			if(row.getLevel() == 0) {
+				tree.add(row);
 			}
+			rowsByLevelAndSequence.computeIfAbsent(row.getLevel() + "|" + row.getSequence(), key -> new ArrayList<Row>()).add(row);
 		});
-		return isMatched.get();
+		Set<Row> processed = Collections.newSetFromMap(new IdentityHashMap<Row, Boolean>());
+		Deque<Row> pending = new ArrayDeque<Row>(tree);
+		while (!pending.isEmpty()) {
+			Row parent = pending.pop();
+			if(!processed.add(parent)) {
+				continue;
+			}
+			List<Row> children = rowsByLevelAndSequence.get((parent.getLevel() + 1) + "|" + parent.getSequence());
+			if(children != null) {
+				children.forEach(child -> {
+					parent.addChildren(child);
+					pending.push(child);
+				});
+			}
+		}
+		return tree;
 	}
 	
 	public int getPrintFormatId() {
@@ -467,11 +546,50 @@ public class ReportInfo {
 		return this;
 	}
 
+	/**
+	 * Page token for next page with key values of last row read
+	 * @return
+	 */
+	public String getNextPageToken() {
+		return nextPageToken;
+	}
+
+	public ReportInfo withNextPageToken(String nextPageToken) {
+		this.nextPageToken = nextPageToken;
+		return this;
+	}
+
 	public ReportInfo withReportViewId(int reportViewId) {
 		this.reportViewId = reportViewId;
 		return this;
 	}
 
+	/**
+	 * Record count is estimated, the exact count is calculated in background
+	 * @return
+	 */
+	public boolean isApproximateCount() {
+		return isApproximateCount;
+	}
+
+	public ReportInfo withApproximateCount(boolean isApproximateCount) {
+		this.isApproximateCount = isApproximateCount;
+		return this;
+	}
+
+	/**
+	 * Fingerprint of count query, it is used for request the exact count
+	 * @return
+	 */
+	public String getCountToken() {
+		return countToken;
+	}
+
+	public ReportInfo withCountToken(String countToken) {
+		this.countToken = countToken;
+		return this;
+	}
+
 	public boolean isSummary() {
 		return isSummary;
 	}
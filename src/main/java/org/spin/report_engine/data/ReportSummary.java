@@ -0,0 +1,163 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.spin.report_engine.format.PrintFormatItem;
+
+/**
+ * Summary of all rows of report by groups and grand total, it is calculated once over
+ * the complete query (without pagination) and can be shared between pages, then the
+ * rows and functions returned are copies
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class ReportSummary {
+
+	/**	Group items sorted by level	*/
+	private final List<PrintFormatItem> groupItems;
+	/**	Summarized items	*/
+	private final List<PrintFormatItem> summarizedItems;
+	/**	Summary rows by group values	*/
+	private final Map<GroupKey, Row> groups;
+	/**	Grand total	*/
+	private Row totalRow;
+
+	private ReportSummary(List<PrintFormatItem> groupItems, List<PrintFormatItem> summarizedItems) {
+		this.groupItems = groupItems;
+		this.summarizedItems = summarizedItems;
+		groups = new LinkedHashMap<GroupKey, Row>();
+	}
+
+	public static ReportSummary newInstance(List<PrintFormatItem> groupItems, List<PrintFormatItem> summarizedItems) {
+		return new ReportSummary(groupItems, summarizedItems);
+	}
+
+	/**
+	 * Add summary row of a group, the grand total has level -1
+	 * @param groupLevel index of group item (depth of ROLLUP)
+	 * @param summaryRow
+	 * @return
+	 */
+	public ReportSummary addRow(int groupLevel, Row summaryRow) {
+		if(groupLevel < 0) {
+			totalRow = summaryRow;
+		} else {
+			groups.put(getGroupKey(summaryRow, groupLevel), summaryRow);
+		}
+		return this;
+	}
+
+	/**
+	 * Get copy of summary rows of all groups, sorted as query
+	 * @return
+	 */
+	public List<Row> getRows() {
+		List<Row> rows = new ArrayList<Row>();
+		groups.values().forEach(summaryRow -> rows.add(copyRow(summaryRow)));
+		return rows;
+	}
+
+	/**
+	 * Get copy of summary row for same group of a summary row of page
+	 * @param pageRow
+	 * @return summary row or null if group is not found
+	 */
+	public Row getGroupRow(Row pageRow) {
+		//	Level of page row is sequence of group item
+		int groupIndex = getGroupIndex(pageRow.getLevel());
+		if(groupIndex < 0) {
+			return null;
+		}
+		Row summaryRow = groups.get(getGroupKey(pageRow, groupIndex));
+		if(summaryRow == null) {
+			return null;
+		}
+		return copyRow(summaryRow);
+	}
+
+	/**
+	 * Get copy of grand totals by print format item
+	 * @return
+	 */
+	public Map<Integer, SummaryFunction> getTotals() {
+		Map<Integer, SummaryFunction> totals = new HashMap<Integer, SummaryFunction>();
+		if(totalRow == null) {
+			return totals;
+		}
+		summarizedItems.forEach(item -> {
+			SummaryFunction function = copyFunction(item, totalRow.getCell(item.getPrintFormatItemId()));
+			if(function != null) {
+				totals.put(item.getPrintFormatItemId(), function);
+			}
+		});
+		return totals;
+	}
+
+	private GroupKey getGroupKey(Row row, int groupLevel) {
+		Object[] values = new Object[groupLevel + 1];
+		for (int level = 0; level <= groupLevel; level++) {
+			values[level] = row.getCell(groupItems.get(level).getPrintFormatItemId()).getValue();
+		}
+		return GroupKey.newInstance(values, values.length);
+	}
+
+	/**
+	 * Get index of group item for a row level (sequence of group item)
+	 * @param level
+	 * @return index or -1 if level is not a group
+	 */
+	private int getGroupIndex(int level) {
+		for (int index = 0; index < groupItems.size(); index++) {
+			if(groupItems.get(index).getSortSequence() == level) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private Row copyRow(Row summaryRow) {
+		Row row = Row.newInstance().withSourceRowDefinition(summaryRow);
+		int groupIndex = getGroupIndex(summaryRow.getLevel());
+		for (int level = 0; level <= groupIndex; level++) {
+			int printFormatItemId = groupItems.get(level).getPrintFormatItemId();
+			Cell cell = summaryRow.getCell(printFormatItemId);
+			row.withCell(printFormatItemId, Cell.newInstance().withValue(cell.getValue()).withDisplayValue(cell.getDisplayValue()));
+		}
+		summarizedItems.forEach(item -> {
+			SummaryFunction function = copyFunction(item, summaryRow.getCell(item.getPrintFormatItemId()));
+			if(function != null) {
+				row.withCell(item.getPrintFormatItemId(), Cell.newInstance().withValue(function.getSumValue()).withFunction(function));
+			}
+		});
+		return row;
+	}
+
+	private SummaryFunction copyFunction(PrintFormatItem item, Cell cell) {
+		if(cell.getFunction() == null) {
+			return null;
+		}
+		return SummaryFunction.newInstance(item).merge(cell.getFunction());
+	}
+
+	@Override
+	public String toString() {
+		return "ReportSummary [groups=" + groups.size() + ", totalRow=" + totalRow + "]";
+	}
+}
@@ -0,0 +1,220 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.data;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.compiere.util.Util;
+import org.spin.report_engine.format.PrintFormatItem;
+
+/**
+ * Columnar store for rows of a report: each print format item has typed vectors
+ * for value, display value and table name, the rows are only indexes over it.
+ * It avoid a map and cells by row for large reports
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class ResultStore {
+
+	/**	Column position by print format item	*/
+	private Map<Integer, Integer> positions;
+	/**	Columns	*/
+	private ColumnData[] columns;
+	/**	Rows added	*/
+	private int size;
+
+	private ResultStore(List<PrintFormatItem> items) {
+		positions = new HashMap<Integer, Integer>();
+		columns = new ColumnData[items.size()];
+		for (int position = 0; position < items.size(); position++) {
+			positions.put(items.get(position).getPrintFormatItemId(), position);
+			columns[position] = new ColumnData();
+		}
+	}
+
+	public static ResultStore newInstance(List<PrintFormatItem> items) {
+		return new ResultStore(items);
+	}
+
+	/**
+	 * Number of rows added
+	 * @return
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Add the row that is being filled (index equal to size) and return its index
+	 * @return
+	 */
+	public int addRow() {
+		return size++;
+	}
+
+	/**
+	 * Get a copy of cell of row, use {@link #setCell(int, int, Cell)} for change it
+	 * @param printFormatItemId
+	 * @param index
+	 * @return
+	 */
+	public Cell getCell(int printFormatItemId, int index) {
+		ColumnData column = getColumn(printFormatItemId);
+		if(column == null) {
+			return Cell.newInstance();
+		}
+		return column.getCell(index);
+	}
+
+	/**
+	 * Set cell for a row
+	 * @param printFormatItemId
+	 * @param index
+	 * @param cell
+	 */
+	public void setCell(int printFormatItemId, int index, Cell cell) {
+		ColumnData column = getColumn(printFormatItemId);
+		if(column == null) {
+			return;
+		}
+		column.setCell(index, cell);
+	}
+
+	/**
+	 * Validate if item is part of store
+	 * @param printFormatItemId
+	 * @return
+	 */
+	public boolean isStored(int printFormatItemId) {
+		return positions.containsKey(printFormatItemId);
+	}
+
+	/**
+	 * Print format items of store
+	 * @return
+	 */
+	public Set<Integer> getItemIds() {
+		return positions.keySet();
+	}
+
+	private ColumnData getColumn(int printFormatItemId) {
+		Integer position = positions.get(printFormatItemId);
+		if(position == null) {
+			return null;
+		}
+		return columns[position];
+	}
+
+	/**
+	 * Vectors of a print format item
+	 */
+	private static class ColumnData {
+		private ColumnVector values;
+		private StringVector displayValues;
+		private StringVector tableNames;
+		/**	Rows with display values processed by mapping	*/
+		private BitSet formatted;
+		/**	Cells with attributes that are not stored as vector: color, style and function	*/
+		private Map<Integer, Cell> extendedCells;
+
+		private Cell getCell(int index) {
+			if(extendedCells != null) {
+				Cell cell = extendedCells.get(index);
+				if(cell != null) {
+					return Cell.newInstance()
+						.withColor(cell.getColor())
+						.withStyle(cell.getStyle())
+						.withValue(cell.getValue())
+						.withDisplayValue(cell.getDisplayValue())
+						.withTableName(cell.getTableName())
+						.withFormatted(cell.isFormatted())
+						.withFunction(cell.getFunction() == null? null: cell.getFunction().copy());
+				}
+			}
+			Cell cell = Cell.newInstance();
+			if(values != null) {
+				cell.withValue(values.getValue(index));
+			}
+			if(displayValues != null) {
+				cell.withDisplayValue((String) displayValues.getValue(index));
+			}
+			if(tableNames != null) {
+				cell.withTableName((String) tableNames.getValue(index));
+			}
+			if(formatted != null) {
+				cell.withFormatted(formatted.get(index));
+			}
+			return cell;
+		}
+
+		private void setCell(int index, Cell cell) {
+			if(cell != null
+					&& (cell.getColor() != null || cell.getStyle() != null || cell.getFunction() != null)) {
+				if(extendedCells == null) {
+					extendedCells = new HashMap<Integer, Cell>();
+				}
+				extendedCells.put(index, cell);
+				return;
+			}
+			if(extendedCells != null) {
+				extendedCells.remove(index);
+			}
+			Object value = null;
+			String displayValue = null;
+			String tableName = null;
+			if(cell != null) {
+				value = cell.getValue();
+				displayValue = Util.isEmpty(cell.getDisplayValue())? null: cell.getDisplayValue();
+				tableName = Util.isEmpty(cell.getTableName())? null: cell.getTableName();
+			}
+			setValue(index, value);
+			if(cell != null && cell.isFormatted()) {
+				if(formatted == null) {
+					formatted = new BitSet();
+				}
+				formatted.set(index);
+			} else if(formatted != null) {
+				formatted.clear(index);
+			}
+			if(displayValue != null || displayValues != null) {
+				if(displayValues == null) {
+					displayValues = new StringVector();
+				}
+				displayValues.setValue(index, displayValue);
+			}
+			if(tableName != null || tableNames != null) {
+				if(tableNames == null) {
+					tableNames = new StringVector();
+				}
+				tableNames.setValue(index, tableName);
+			}
+		}
+
+		private void setValue(int index, Object value) {
+			if(values == null) {
+				if(value == null) {
+					return;
+				}
+				values = ColumnVector.newVector(value);
+			} else if(!values.isSupported(value)) {
+				values = ObjectVector.copyOf(values);
+			}
+			values.setValue(index, value);
+		}
+	}
+}
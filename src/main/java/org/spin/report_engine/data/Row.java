@@ -21,28 +21,45 @@ import java.util.Map;
 import java.util.Optional;
 
 /**
- * Row information or representation for Row
+ * Row information or representation for Row, the cells can be stored in the row
+ * or it can be a view over a row of {@link ResultStore}
  * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
  */
 public class Row {
 	/**	Data for Row	*/
 	private Map<Integer, Cell> data;
+	/**	Store and index when row is a view	*/
+	private ResultStore store;
+	private int index;
 	private int level;
 	private int sequence;
 	private List<Row> children;
 	private boolean isSummaryRow;
+	/**	Keys for sort, see {@link RowSorter}	*/
+	private Object[] sortKeys;
 	
 	public Row() {
-		data = new HashMap<>();
-		children = new ArrayList<Row>();
+		
 	}
 	
 	public List<Row> getChildren() {
+		if(children == null) {
+			children = new ArrayList<Row>();
+		}
 		return children;
 	}
 	
+	/**
+	 * Remove children of row
+	 * @return
+	 */
+	public Row clearChildren() {
+		children = null;
+		return this;
+	}
+	
 	public Row addChildren(Row child) {
-		children.add(child);
+		getChildren().add(child);
 		return this;
 	}
 
@@ -50,6 +67,19 @@ public class Row {
 		return new Row();
 	}
 	
+	/**
+	 * Row as view of a stored row
+	 * @param store
+	 * @param index
+	 * @return
+	 */
+	public static Row newInstance(ResultStore store, int index) {
+		Row row = new Row();
+		row.store = store;
+		row.index = index;
+		return row;
+	}
+	
 	public Row withSourceRowDefinition(Row sourceRow) {
 		return withLevel(sourceRow.getLevel())
 		.withSummaryRow(sourceRow.isSummaryRow())
@@ -74,21 +104,61 @@ public class Row {
 		return this;
 	}
 
+	/**
+	 * Validate if row is a view of store
+	 * @return
+	 */
+	public boolean isStored() {
+		return store != null;
+	}
+
 	public Row withCell(int printFormatItemId, Cell cell) {
-		data.put(printFormatItemId, cell);
+		if(store != null && store.isStored(printFormatItemId)) {
+			store.setCell(printFormatItemId, index, cell);
+			return this;
+		}
+		getLocalData().put(printFormatItemId, cell);
 		return this;
 	}
 	
 	public Row withCells(Map<Integer, Cell> cells) {
+		store = null;
 		data = cells;
 		return this;
 	}
 	
+	/**
+	 * Get cells of row, for a stored row it is a copy
+	 * @return
+	 */
 	public Map<Integer, Cell> getData() {
+		if(store == null) {
+			return getLocalData();
+		}
+		Map<Integer, Cell> cells = new HashMap<Integer, Cell>();
+		if(data != null) {
+			cells.putAll(data);
+		}
+		store.getItemIds().forEach(printFormatItemId -> {
+			cells.put(printFormatItemId, store.getCell(printFormatItemId, index));
+		});
+		return cells;
+	}
+	
+	private Map<Integer, Cell> getLocalData() {
+		if(data == null) {
+			data = new HashMap<>();
+		}
 		return data;
 	}
 	
 	public Cell getCell(int printFormatItemId) {
+		if(store != null && store.isStored(printFormatItemId)) {
+			return store.getCell(printFormatItemId, index);
+		}
+		if(data == null) {
+			return Cell.newInstance();
+		}
 		return Optional.ofNullable(data.get(printFormatItemId)).orElse(Cell.newInstance());
 	}
 	
@@ -96,6 +166,15 @@ public class Row {
 		return Optional.ofNullable(getCell(itemId).getCompareValue()).orElse("");
 	}
 
+	public Object[] getSortKeys() {
+		return sortKeys;
+	}
+
+	public Row withSortKeys(Object[] sortKeys) {
+		this.sortKeys = sortKeys;
+		return this;
+	}
+
 	public int getLevel() {
 		return level;
 	}
@@ -106,12 +185,12 @@ public class Row {
 	}
 
 	public void setData(Map<Integer, Cell> data) {
-		this.data = data;
+		withCells(data);
 	}
 
 	@Override
 	public String toString() {
-		return "level=" + level + ", Row [data=" + data + "]";
+		return "level=" + level + ", Row [data=" + getData() + "]";
 	}
 	
 	@Override
@@ -0,0 +1,190 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.data;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import org.compiere.util.DisplayType;
+import org.compiere.util.Language;
+import org.compiere.util.Util;
+import org.spin.report_engine.format.PrintFormatItem;
+
+/**
+ * Sorter of report rows: each row has a typed key by sorting item that is computed
+ * once (number, epoch day or collation key for text) and the comparators are built
+ * once by report, then a sort does not format or convert values on each comparison
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class RowSorter {
+
+	private PrintFormatItem[] sortingItems;
+	private Collator collator;
+	private Comparator<Row> summaryAtEndComparator;
+	private Comparator<Row> summaryAtStartComparator;
+
+	private RowSorter(List<PrintFormatItem> sortingItems, Language language) {
+		this.sortingItems = sortingItems.toArray(new PrintFormatItem[sortingItems.size()]);
+		collator = Collator.getInstance(language.getLocale());
+		//	Ignore case as previous comparison
+		collator.setStrength(Collator.SECONDARY);
+	}
+
+	public static RowSorter newInstance(List<PrintFormatItem> sortingItems, Language language) {
+		return new RowSorter(sortingItems, language);
+	}
+
+	/**
+	 * Get comparator for rows, first by sorting items then by level
+	 * @param summaryAtEnd if true the summary rows (low level) are after detail rows
+	 * @return
+	 */
+	public Comparator<Row> getComparator(boolean summaryAtEnd) {
+		if(summaryAtEnd) {
+			if(summaryAtEndComparator == null) {
+				summaryAtEndComparator = buildComparator(true);
+			}
+			return summaryAtEndComparator;
+		}
+		if(summaryAtStartComparator == null) {
+			summaryAtStartComparator = buildComparator(false);
+		}
+		return summaryAtStartComparator;
+	}
+
+	private Comparator<Row> buildComparator(boolean summaryAtEnd) {
+		Comparator<Row> levelComparator = Comparator.comparing(Row::getLevel);
+		if(sortingItems.length == 0) {
+			return summaryAtEnd? levelComparator: levelComparator.reversed();
+		}
+		Comparator<Row> keysComparator = (row, otherRow) -> {
+			Object[] keys = getSortKeys(row);
+			Object[] otherKeys = getSortKeys(otherRow);
+			for (int keyIndex = 0; keyIndex < keys.length; keyIndex++) {
+				int result = compareKeys(keys[keyIndex], otherKeys[keyIndex]);
+				if(result != 0) {
+					return result;
+				}
+			}
+			return 0;
+		};
+		return keysComparator.thenComparing(summaryAtEnd? levelComparator.reversed(): levelComparator);
+	}
+
+	/**
+	 * Get keys of row, it is computed only first time
+	 * @param row
+	 * @return
+	 */
+	public Object[] getSortKeys(Row row) {
+		Object[] keys = row.getSortKeys();
+		if(keys == null) {
+			keys = new Object[sortingItems.length];
+			for (int keyIndex = 0; keyIndex < sortingItems.length; keyIndex++) {
+				PrintFormatItem item = sortingItems[keyIndex];
+				keys[keyIndex] = getSortKey(row.getCell(item.getPrintFormatItemId()), item.getReferenceId());
+			}
+			row.withSortKeys(keys);
+		}
+		return keys;
+	}
+
+	/**
+	 * Typed key of a cell by display type: the number for numeric and ID types, epoch day
+	 * for dates, the display value as text for text and lookups, else the number or the
+	 * text of value. Null or empty values are null
+	 * @param cell
+	 * @param displayType
+	 * @return
+	 */
+	private Object getSortKey(Cell cell, int displayType) {
+		Object value = cell.getValue();
+		//	Formatted numbers are not sorted as text
+		if((DisplayType.isNumeric(displayType) || displayType == DisplayType.ID)
+				&& value instanceof Number) {
+			return value instanceof BigDecimal? value: new BigDecimal(value.toString());
+		}
+		if(value instanceof Timestamp) {
+			return ((Timestamp) value).toLocalDateTime().toLocalDate().toEpochDay();
+		}
+		if(DisplayType.isDate(displayType) && value instanceof Date) {
+			return new Timestamp(((Date) value).getTime()).toLocalDateTime().toLocalDate().toEpochDay();
+		}
+		if(!Util.isEmpty(cell.getDisplayValue())) {
+			return collator.getCollationKey(cell.getDisplayValue());
+		}
+		if(value == null) {
+			return null;
+		}
+		if(value instanceof BigDecimal) {
+			return value;
+		}
+		if(value instanceof Number) {
+			return new BigDecimal(value.toString());
+		}
+		if(value instanceof Date) {
+			return new Timestamp(((Date) value).getTime()).toLocalDateTime().toLocalDate().toEpochDay();
+		}
+		String text = String.valueOf(value);
+		if(Util.isEmpty(text)) {
+			return null;
+		}
+		return collator.getCollationKey(text);
+	}
+
+	/**
+	 * Compare keys, null is first and keys of different types are sorted by type
+	 * @param key
+	 * @param otherKey
+	 * @return
+	 */
+	private static int compareKeys(Object key, Object otherKey) {
+		if(key == otherKey) {
+			return 0;
+		}
+		if(key == null) {
+			return -1;
+		}
+		if(otherKey == null) {
+			return 1;
+		}
+		int typeResult = Integer.compare(getTypeRank(key), getTypeRank(otherKey));
+		if(typeResult != 0) {
+			return typeResult;
+		}
+		if(key instanceof BigDecimal) {
+			return ((BigDecimal) key).compareTo((BigDecimal) otherKey);
+		}
+		if(key instanceof Long) {
+			return ((Long) key).compareTo((Long) otherKey);
+		}
+		return ((CollationKey) key).compareTo((CollationKey) otherKey);
+	}
+
+	private static int getTypeRank(Object key) {
+		if(key instanceof BigDecimal) {
+			return 0;
+		}
+		if(key instanceof Long) {
+			return 1;
+		}
+		return 2;
+	}
+}
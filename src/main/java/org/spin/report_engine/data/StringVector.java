@@ -0,0 +1,70 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column of strings encoded with dictionary: each distinct value is kept once
+ * and each row only has the code of value
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+class StringVector extends ColumnVector {
+
+	private int[] codes = new int[0];
+	private List<String> dictionary = new ArrayList<String>();
+	private Map<String, Integer> dictionaryIndex = new HashMap<String, Integer>();
+
+	@Override
+	boolean isSupported(Object value) {
+		return value == null || value instanceof String;
+	}
+
+	@Override
+	protected void ensureValueCapacity(int capacity) {
+		if(capacity > codes.length) {
+			codes = Arrays.copyOf(codes, getNewCapacity(codes.length, capacity));
+		}
+	}
+
+	@Override
+	protected Object getNotNullValue(int index) {
+		return dictionary.get(codes[index]);
+	}
+
+	@Override
+	protected void setNotNullValue(int index, Object value) {
+		String stringValue = (String) value;
+		Integer code = dictionaryIndex.get(stringValue);
+		if(code == null) {
+			code = dictionary.size();
+			dictionary.add(stringValue);
+			dictionaryIndex.put(stringValue, code);
+		}
+		codes[index] = code;
+	}
+
+	/**
+	 * Number of distinct values
+	 * @return
+	 */
+	int getDictionarySize() {
+		return dictionary.size();
+	}
+}
@@ -22,22 +22,31 @@ import java.util.Map;
 
 import org.compiere.util.DisplayType;
 import org.compiere.util.Env;
+import org.spin.report_engine.format.PrintFormatItem;
 
 /**
  * This class have all need for manage row summary and groups
  * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
  */
 public class SummaryFunction {
-	/** The Sum				*/
+	/**	Functions enabled (bits by function)	*/
+	private int functions;
+	/** The Sum as unscaled long while it fits	*/
+	private long unscaledSum;
+	/**	Scale of unscaled sum	*/
+	private int sumScale;
+	/**	The Sum when it does not fit in long	*/
 	private BigDecimal sum;
 	/** The Count			*/
-	private int count;
+	private long count;
 	/** Minimum				*/
 	private BigDecimal minimum;
 	/** Maximum				*/
 	private BigDecimal maximum;
-	/** Sum of Squares		*/
-	private BigDecimal sumSquare;
+	/**	Running mean for variance (Welford)	*/
+	private double mean;
+	/** Sum of squares of differences from mean	*/
+	private double squaredDifferences;
 	/**	Display values	*/
 	private Map<String, String> displayValues;
 	
@@ -64,19 +73,93 @@ public class SummaryFunction {
 	/**	AD_Message Names of Functions			*/
 	static private final String[]	FUNCTION_NAMES = new String[]
 		{"Sum",     "Mean",    "Count",   "Min",     "Max",     "Variance", "Deviation"};
+	/**	All functions enabled	*/
+	static private final int		ALL_FUNCTIONS = (1 << FUNCTIONS.length) - 1;
+	/**	Maximum scale for sum as long	*/
+	static private final int		MAXIMUM_SUM_SCALE = 18;
+	/**	Powers of ten that fit in long	*/
+	static private final long[]		POWERS_OF_TEN = new long[MAXIMUM_SUM_SCALE + 1];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
 	
 	
-	private SummaryFunction() {
-		sum = Env.ZERO;
-		sumSquare = Env.ZERO;
+	private SummaryFunction(int functions) {
+		this.functions = functions;
 		count = 0;
-		displayValues = new HashMap<String, String>();
 	}
 	
+	/**
+	 * Summary with all functions
+	 * @return
+	 */
 	public static SummaryFunction newInstance() {
-		return new SummaryFunction();
+		return new SummaryFunction(ALL_FUNCTIONS);
+	}
+
+	/**
+	 * Summary with functions enabled on print format item
+	 * @param item
+	 * @return
+	 */
+	public static SummaryFunction newInstance(PrintFormatItem item) {
+		return new SummaryFunction(getFunctions(item));
+	}
+
+	/**
+	 * Get functions of print format item as bits
+	 * @param item
+	 * @return
+	 */
+	public static int getFunctions(PrintFormatItem item) {
+		int functions = 0;
+		if(item.isSummarized()) {
+			functions |= getFunctionBit(F_SUM);
+		}
+		if(item.isAveraged()) {
+			functions |= getFunctionBit(F_MEAN);
+		}
+		if(item.isCounted()) {
+			functions |= getFunctionBit(F_COUNT);
+		}
+		if(item.isMinCalc()) {
+			functions |= getFunctionBit(F_MIN);
+		}
+		if(item.isMaxCalc()) {
+			functions |= getFunctionBit(F_MAX);
+		}
+		if(item.isVarianceCalc()) {
+			functions |= getFunctionBit(F_VARIANCE);
+		}
+		if(item.isDeviationCalc()) {
+			functions |= getFunctionBit(F_DEVIATION);
+		}
+		return functions;
 	}
 
+	private static int getFunctionBit(char function) {
+		for (int i = 0; i < FUNCTIONS.length; i++) {
+			if (FUNCTIONS[i] == function)
+				return 1 << i;
+		}
+		return 0;
+	}
+
+	/**
+	 * Validate if function is calculated
+	 * @param function
+	 * @return
+	 */
+	public boolean isEnabled(char function) {
+		return (functions & getFunctionBit(function)) != 0;
+	}
+
+	private boolean isVarianceRequired() {
+		return isEnabled(F_VARIANCE) || isEnabled(F_DEVIATION);
+	}
 	
 	/**
 	 * 	Add Value to Counter
@@ -85,34 +168,178 @@ public class SummaryFunction {
 	public SummaryFunction addValue (BigDecimal value) {
 		if (value != null) {
 			//	Sum
-			sum = sum.add(value);
+			addToSum(value);
 			//	Count
 			count++;
 			//	Min
-			if (minimum == null) {
+			if (isEnabled(F_MIN)
+					&& (minimum == null || value.compareTo(minimum) < 0)) {
 				minimum = value;
 			}
-			minimum = minimum.min(value);
 			//	Max
-			if (maximum == null) {
+			if (isEnabled(F_MAX)
+					&& (maximum == null || value.compareTo(maximum) > 0)) {
 				maximum = value;
 			}
-			maximum = maximum.max(value);
-			//	Sum of Squares
-			sumSquare = sumSquare.add (value.multiply(value));
+			//	Online variance (Welford)
+			if (isVarianceRequired()) {
+				double doubleValue = value.doubleValue();
+				double delta = doubleValue - mean;
+				mean += delta / count;
+				squaredDifferences += delta * (doubleValue - mean);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Copy of this summary with same functions, values and display values
+	 * @return
+	 */
+	public SummaryFunction copy() {
+		SummaryFunction copy = new SummaryFunction(functions);
+		copy.unscaledSum = unscaledSum;
+		copy.sumScale = sumScale;
+		copy.sum = sum;
+		copy.count = count;
+		copy.minimum = minimum;
+		copy.maximum = maximum;
+		copy.mean = mean;
+		copy.squaredDifferences = squaredDifferences;
+		if(displayValues != null) {
+			copy.displayValues = new HashMap<String, String>(displayValues);
+		}
+		return copy;
+	}
+
+	/**
+	 * Merge other summary of same functions, it can be a partial summary of other rows
+	 * @param other
+	 * @return
+	 */
+	public SummaryFunction merge(SummaryFunction other) {
+		if (other == null || other.count == 0) {
+			return this;
+		}
+		if (count == 0) {
+			mean = other.mean;
+			squaredDifferences = other.squaredDifferences;
+		} else {
+			long total = count + other.count;
+			double delta = other.mean - mean;
+			squaredDifferences += other.squaredDifferences + delta * delta * ((double) count * other.count / total);
+			mean += delta * other.count / total;
+		}
+		count += other.count;
+		if (other.sum != null) {
+			addToSum(other.sum);
+		} else {
+			addToSum(BigDecimal.valueOf(other.unscaledSum, other.sumScale));
+		}
+		if (other.minimum != null
+				&& (minimum == null || other.minimum.compareTo(minimum) < 0)) {
+			minimum = other.minimum;
+		}
+		if (other.maximum != null
+				&& (maximum == null || other.maximum.compareTo(maximum) > 0)) {
+			maximum = other.maximum;
+		}
+		return this;
+	}
+
+	/**
+	 * Set values summarized by database, the variance is the sample variance
+	 * @param sum
+	 * @param count
+	 * @param minimum
+	 * @param maximum
+	 * @param sampleVariance
+	 * @return
+	 */
+	public SummaryFunction withAggregate(BigDecimal sum, long count, BigDecimal minimum, BigDecimal maximum, BigDecimal sampleVariance) {
+		this.sum = null;
+		unscaledSum = 0;
+		sumScale = 0;
+		if (sum != null) {
+			addToSum(sum);
+		}
+		this.count = count;
+		if (isEnabled(F_MIN)) {
+			this.minimum = minimum;
+		}
+		if (isEnabled(F_MAX)) {
+			this.maximum = maximum;
+		}
+		if (isVarianceRequired() && count > 0) {
+			mean = getSum().doubleValue() / count;
+			//	Sum of squared differences from sample variance
+			squaredDifferences = sampleVariance == null? 0: sampleVariance.doubleValue() * (count - 1);
 		}
 		return this;
 	}
+
+	/**
+	 * Add to sum as unscaled long, use BigDecimal when value does not fit
+	 * @param value
+	 */
+	private void addToSum(BigDecimal value) {
+		if (sum == null) {
+			try {
+				int scale = Math.max(value.scale(), 0);
+				if (scale <= MAXIMUM_SUM_SCALE
+						&& value.unscaledValue().bitLength() < 63) {
+					long unscaledValue = value.unscaledValue().longValue();
+					if (value.scale() < 0) {
+						unscaledValue = Math.multiplyExact(unscaledValue, getPowerOfTen(-value.scale()));
+					}
+					if (scale > sumScale) {
+						unscaledSum = Math.multiplyExact(unscaledSum, getPowerOfTen(scale - sumScale));
+						sumScale = scale;
+					} else if (scale < sumScale) {
+						unscaledValue = Math.multiplyExact(unscaledValue, getPowerOfTen(sumScale - scale));
+					}
+					unscaledSum = Math.addExact(unscaledSum, unscaledValue);
+					return;
+				}
+			} catch (ArithmeticException e) {
+				//	Overflow, continue with BigDecimal
+			}
+			sum = BigDecimal.valueOf(unscaledSum, sumScale);
+		}
+		sum = sum.add(value);
+	}
+
+	/**
+	 * Power of ten as long
+	 * @param exponent
+	 * @return
+	 */
+	private static long getPowerOfTen(int exponent) {
+		if (exponent >= POWERS_OF_TEN.length) {
+			throw new ArithmeticException("Overflow");
+		}
+		return POWERS_OF_TEN[exponent];
+	}
+
+	private BigDecimal getSum() {
+		if (sum != null) {
+			return sum;
+		}
+		return BigDecimal.valueOf(unscaledSum, sumScale);
+	}
 	
 	/**
 	 * 	Get Function Value
 	 *  @param function function
-	 *  @return function value
+	 *  @return function value, null if function is not enabled
 	 */
 	public BigDecimal getValue(char function) {
+		if (!isEnabled(function)) {
+			return null;
+		}
 		//	Sum
 		if (function == F_SUM) {
-			return sum;
+			return getSum();
 		}
 		//	Min/Max
 		if (function == F_MIN) {
@@ -122,7 +349,7 @@ public class SummaryFunction {
 			return maximum;
 		}
 		//	Count
-		BigDecimal counter = new BigDecimal(count);
+		BigDecimal counter = BigDecimal.valueOf(count);
 		if (function == F_COUNT) {
 			return counter;
 		}
@@ -134,16 +361,14 @@ public class SummaryFunction {
 
 		//	Mean = sum/count - round to 4 digits
 		if (function == F_MEAN) {
-			BigDecimal mean = sum.divide(counter, 4, RoundingMode.HALF_UP);
+			BigDecimal mean = getSum().divide(counter, 4, RoundingMode.HALF_UP);
 			if (mean.scale() > 4) {
 				mean = mean.setScale(4, RoundingMode.HALF_UP);
 			}
 			return mean;
 		}
-		//	Variance = sum of squares - (square of sum / count)
-		BigDecimal ss = sum.multiply(sum);
-		ss = ss.divide(counter, 4, RoundingMode.HALF_UP);
-		BigDecimal variance = sumSquare.subtract(ss);
+		//	Variance = sum of squares - (square of sum / count), it is the sum of squared differences from mean
+		BigDecimal variance = BigDecimal.valueOf(Math.max(squaredDifferences, 0));
 		if (function == F_VARIANCE) {
 			if (variance.scale() > 4) {
 				variance = variance.setScale(4, RoundingMode.HALF_UP);
@@ -160,6 +385,14 @@ public class SummaryFunction {
 		}
 		return deviation;
 	}	//	getValue
+
+	/**
+	 * Sum of values, it is calculated for all summaries
+	 * @return
+	 */
+	public BigDecimal getSumValue() {
+		return getSum();
+	}
 	
 	/**
 	 * Get display value of function
@@ -167,6 +400,9 @@ public class SummaryFunction {
 	 * @return
 	 */
 	public String getDisplayValue(char function) {
+		if(displayValues == null) {
+			return null;
+		}
 		return displayValues.get(String.valueOf(function));
 	}
 	
@@ -176,6 +412,9 @@ public class SummaryFunction {
 	 * @param displayValue
 	 */
 	public void setDisplayValue(char function, String displayValue) {
+		if(displayValues == null) {
+			displayValues = new HashMap<String, String>();
+		}
 		displayValues.put(String.valueOf(function), displayValue);
 	}
 	
@@ -224,7 +463,7 @@ public class SummaryFunction {
 	
 	@Override
 	public String toString() {
-		return "SummaryFunction [sum=" + sum + ", count=" + count + ", minimum=" + minimum + ", maximum=" + maximum
-				+ ", sumSquare=" + sumSquare + "]";
+		return "SummaryFunction [sum=" + getSum() + ", count=" + count + ", minimum=" + minimum + ", maximum=" + maximum
+				+ ", squaredDifferences=" + squaredDifferences + "]";
 	}
 }
@@ -14,84 +14,213 @@
  ************************************************************************************/
 package org.spin.report_engine.data;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.spin.report_engine.format.PrintFormatItem;
 
 /**
- * This class have all need for manage row summary and groups
+ * This class have all need for manage row summary and groups.
+ * If rows are sorted by group items the summary of a group is closed when the group
+ * values change (streaming), the summary row is sent before the rows of group and
+ * it is filled when group is closed, or it is sent after the rows of group when it is closed
+ * (group break). Else the groups are aggregated by hash of group values
  * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
  */
 public class SummaryHandler {
 	private List<PrintFormatItem> groupedItems;
 	private List<PrintFormatItem> summarizedItems;
-	private Map<Integer, Map<Row, Map<Integer, SummaryFunction>>> summary;
-	private Map<Integer, Map<String, Map<Integer, SummaryFunction>>> completeSummary;
+	/**	Summary by group level (hash aggregation)	*/
+	private List<Map<GroupKey, GroupSummary>> summary;
+	/**	Grand totals by print format item	*/
+	private Map<Integer, SummaryFunction> totals;
+	/**	Streaming by group break	*/
+	private Consumer<Row> rowConsumer;
+	private GroupSummary[] openGroups;
+	private List<Row> streamedRows;
+	/**	Summary row is sent when group is closed	*/
+	private boolean isGroupBreak;
 	
 	private SummaryHandler(List<PrintFormatItem> printFormatItems) {
 		groupedItems = printFormatItems.stream().filter(item -> item.isGroupBy()).sorted(Comparator.comparing(PrintFormatItem::getSortSequence)).collect(Collectors.toList());
 		summarizedItems = printFormatItems.stream().filter(printItem -> {
-			return printItem.isAveraged() || printItem.isCounted() || printItem.isMaxCalc() || printItem.isMinCalc() || printItem.isSummarized() || printItem.isVarianceCalc();
+			return SummaryFunction.getFunctions(printItem) != 0;
 		}).collect(Collectors.toList());
-		summary = new HashMap<Integer, Map<Row, Map<Integer, SummaryFunction>>>();
-		completeSummary = new HashMap<Integer, Map<String, Map<Integer, SummaryFunction>>>();
+		summary = new ArrayList<Map<GroupKey, GroupSummary>>();
+		groupedItems.forEach(groupItem -> summary.add(new LinkedHashMap<GroupKey, GroupSummary>()));
+		totals = new HashMap<Integer, SummaryFunction>();
+	}
+	
+	public static SummaryHandler newInstance(List<PrintFormatItem> groupedItems) {
+		return new SummaryHandler(groupedItems);
+	}
+	
+	/**
+	 * Summarize by group break, the rows added must be sorted by group items.
+	 * The summary row of a group is sent to consumer before first row of group
+	 * @param rowConsumer
+	 * @return
+	 */
+	public SummaryHandler withStreaming(Consumer<Row> rowConsumer) {
+		this.rowConsumer = rowConsumer;
+		openGroups = new GroupSummary[groupedItems.size()];
+		streamedRows = new ArrayList<Row>();
+		return this;
+	}
+	
+	/**
+	 * Summarize by group break, the rows added must be sorted by group items.
+	 * The summary row of a group is sent to consumer when group is closed, before the first
+	 * row of next group, and it is not kept by handler
+	 * @param rowConsumer
+	 * @return
+	 */
+	public SummaryHandler withGroupBreak(Consumer<Row> rowConsumer) {
+		withStreaming(rowConsumer);
+		isGroupBreak = true;
+		return this;
+	}
+	
+	/**
+	 * Summary rows are sent to consumer while rows are added
+	 * @return
+	 */
+	public boolean isStreaming() {
+		return rowConsumer != null;
 	}
 	
 	public SummaryHandler addRow(Row row) {
-		groupedItems.forEach(groupItem -> {
-			Row keyRow = Row.newInstance().withLevel(groupItem.getSortSequence());
-			groupedItems.stream().filter(item -> item.getSortSequence() <= groupItem.getSortSequence()).forEach(item ->{
-				keyRow.withCell(item.getPrintFormatItemId(), row.getCell(item.getPrintFormatItemId()));
-			});
-			Map<Row, Map<Integer, SummaryFunction>> groupTotals = Optional.ofNullable(summary.get(groupItem.getPrintFormatItemId())).orElse(new HashMap<Row, Map<Integer, SummaryFunction>>());
-			Map<String, Map<Integer, SummaryFunction>> totals = Optional.ofNullable(completeSummary.get(groupItem.getPrintFormatItemId())).orElse(new HashMap<String, Map<Integer,SummaryFunction>>());
-			Map<Integer, SummaryFunction> columnTotals = Optional.ofNullable(groupTotals.get(keyRow)).orElse(new HashMap<Integer, SummaryFunction>());
-			Map<Integer, SummaryFunction> sumTotals = Optional.ofNullable(totals.get(SummaryFunction.getFunctionSymbol(SummaryFunction.F_SUM))).orElse(new HashMap<Integer, SummaryFunction>());
-			Map<Integer, SummaryFunction> averageTotals = Optional.ofNullable(totals.get(SummaryFunction.getFunctionSymbol(SummaryFunction.F_MEAN))).orElse(new HashMap<Integer, SummaryFunction>());
-			Map<Integer, SummaryFunction> countTotals = Optional.ofNullable(totals.get(SummaryFunction.getFunctionSymbol(SummaryFunction.F_COUNT))).orElse(new HashMap<Integer, SummaryFunction>());
-			Map<Integer, SummaryFunction> minimumTotals = Optional.ofNullable(totals.get(SummaryFunction.getFunctionSymbol(SummaryFunction.F_MIN))).orElse(new HashMap<Integer, SummaryFunction>());
-			Map<Integer, SummaryFunction> maximumTotals = Optional.ofNullable(totals.get(SummaryFunction.getFunctionSymbol(SummaryFunction.F_MAX))).orElse(new HashMap<Integer, SummaryFunction>());
-			Map<Integer, SummaryFunction> varianceTotals = Optional.ofNullable(totals.get(SummaryFunction.getFunctionSymbol(SummaryFunction.F_VARIANCE))).orElse(new HashMap<Integer, SummaryFunction>());
-			Map<Integer, SummaryFunction> deviationTotals = Optional.ofNullable(totals.get(SummaryFunction.getFunctionSymbol(SummaryFunction.F_DEVIATION))).orElse(new HashMap<Integer, SummaryFunction>());
-			summarizedItems.forEach(sumItem -> {
-				addValue(sumItem.getPrintFormatItemId(), columnTotals, row.getCell(sumItem.getPrintFormatItemId()));
-				addValue(sumItem.getPrintFormatItemId(), sumTotals, row.getCell(sumItem.getPrintFormatItemId()));
-				addValue(sumItem.getPrintFormatItemId(), averageTotals, row.getCell(sumItem.getPrintFormatItemId()));
-				addValue(sumItem.getPrintFormatItemId(), countTotals, row.getCell(sumItem.getPrintFormatItemId()));
-				addValue(sumItem.getPrintFormatItemId(), minimumTotals, row.getCell(sumItem.getPrintFormatItemId()));
-				addValue(sumItem.getPrintFormatItemId(), maximumTotals, row.getCell(sumItem.getPrintFormatItemId()));
-				addValue(sumItem.getPrintFormatItemId(), varianceTotals, row.getCell(sumItem.getPrintFormatItemId()));
-				addValue(sumItem.getPrintFormatItemId(), deviationTotals, row.getCell(sumItem.getPrintFormatItemId()));
-			});
-			groupTotals.put(keyRow, columnTotals);
-			totals.put(SummaryFunction.getFunctionSymbol(SummaryFunction.F_SUM), sumTotals);
-			totals.put(SummaryFunction.getFunctionSymbol(SummaryFunction.F_MEAN), averageTotals);
-			totals.put(SummaryFunction.getFunctionSymbol(SummaryFunction.F_COUNT), countTotals);
-			totals.put(SummaryFunction.getFunctionSymbol(SummaryFunction.F_MIN), minimumTotals);
-			totals.put(SummaryFunction.getFunctionSymbol(SummaryFunction.F_MAX), maximumTotals);
-			totals.put(SummaryFunction.getFunctionSymbol(SummaryFunction.F_VARIANCE), varianceTotals);
-			totals.put(SummaryFunction.getFunctionSymbol(SummaryFunction.F_DEVIATION), deviationTotals);
-			summary.put(groupItem.getPrintFormatItemId(), groupTotals);
-			completeSummary.put(groupItem.getPrintFormatItemId(), totals);
-		});
+		if(summarizedItems.isEmpty() && groupedItems.isEmpty()) {
+			return this;
+		}
+		//	Values are read once by row
+		BigDecimal[] values = new BigDecimal[summarizedItems.size()];
+		for (int index = 0; index < values.length; index++) {
+			PrintFormatItem sumItem = summarizedItems.get(index);
+			values[index] = row.getCell(sumItem.getPrintFormatItemId()).getFunctionValue();
+			getFunction(totals, sumItem).addValue(values[index]);
+		}
+		if(groupedItems.isEmpty()) {
+			return this;
+		}
+		Object[] groupValues = new Object[groupedItems.size()];
+		for (int level = 0; level < groupValues.length; level++) {
+			groupValues[level] = row.getCell(groupedItems.get(level).getPrintFormatItemId()).getValue();
+		}
+		if(isStreaming()) {
+			addRowByGroupBreak(row, groupValues, values);
+			return this;
+		}
+		for (int level = 0; level < groupValues.length; level++) {
+			GroupKey key = GroupKey.newInstance(groupValues, level + 1);
+			GroupSummary group = summary.get(level).get(key);
+			if(group == null) {
+				group = newGroup(row, key, level);
+				summary.get(level).put(key, group);
+			}
+			group.addValues(values);
+		}
 		return this;
 	}
 	
-	private void addValue(int key, Map<Integer, SummaryFunction> columnTotals, Cell cell) {
-		SummaryFunction function = Optional.ofNullable(columnTotals.get(key)).orElse(SummaryFunction.newInstance());
-		function.addValue(cell.getFunctionValue());
-		columnTotals.put(key, function);
+	/**
+	 * Close groups with changed values and open new groups
+	 * @param row
+	 * @param groupValues
+	 * @param values
+	 */
+	private void addRowByGroupBreak(Row row, Object[] groupValues, BigDecimal[] values) {
+		int changedLevel = openGroups.length;
+		for (int level = 0; level < openGroups.length; level++) {
+			if(openGroups[level] == null || !isSameGroup(openGroups[level].key, groupValues)) {
+				changedLevel = level;
+				break;
+			}
+		}
+		if(changedLevel < openGroups.length) {
+			closeGroups(changedLevel);
+			for (int level = changedLevel; level < openGroups.length; level++) {
+				GroupSummary group = newGroup(row, GroupKey.newInstance(groupValues, level + 1), level);
+				openGroups[level] = group;
+				if(!isGroupBreak) {
+					streamedRows.add(group.row);
+					rowConsumer.accept(group.row);
+				}
+			}
+		}
+		for (GroupSummary group : openGroups) {
+			group.addValues(values);
+		}
 	}
 	
-	public static SummaryHandler newInstance(List<PrintFormatItem> groupedItems) {
-		return new SummaryHandler(groupedItems);
+	private boolean isSameGroup(GroupKey key, Object[] groupValues) {
+		for (int index = 0; index < key.getSize(); index++) {
+			if(!Objects.equals(key.getValue(index), groupValues[index])) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Close open groups from a level to last level
+	 * @param fromLevel
+	 */
+	private void closeGroups(int fromLevel) {
+		for (int level = openGroups.length - 1; level >= fromLevel; level--) {
+			if(openGroups[level] != null) {
+				openGroups[level].fill();
+				if(isGroupBreak) {
+					rowConsumer.accept(openGroups[level].row);
+				}
+				openGroups[level] = null;
+			}
+		}
+	}
+	
+	/**
+	 * Close all open groups, it is called after last row
+	 * @return
+	 */
+	public SummaryHandler finish() {
+		if(isStreaming()) {
+			closeGroups(0);
+		}
+		return this;
+	}
+	
+	private GroupSummary newGroup(Row row, GroupKey key, int level) {
+		PrintFormatItem groupItem = groupedItems.get(level);
+		Row keyRow = Row.newInstance()
+			.withLevel(groupItem.getSortSequence())
+			.withSummaryRow(true)
+		;
+		for (int index = 0; index <= level; index++) {
+			int printFormatItemId = groupedItems.get(index).getPrintFormatItemId();
+			keyRow.withCell(printFormatItemId, row.getCell(printFormatItemId));
+		}
+		SummaryFunction[] functions = new SummaryFunction[summarizedItems.size()];
+		for (int index = 0; index < functions.length; index++) {
+			functions[index] = SummaryFunction.newInstance(summarizedItems.get(index));
+		}
+		return new GroupSummary(key, keyRow, functions);
+	}
+	
+	private SummaryFunction getFunction(Map<Integer, SummaryFunction> columnTotals, PrintFormatItem item) {
+		SummaryFunction function = columnTotals.get(item.getPrintFormatItemId());
+		if(function == null) {
+			function = SummaryFunction.newInstance(item);
+			columnTotals.put(item.getPrintFormatItemId(), function);
+		}
+		return function;
 	}
 
 	public List<PrintFormatItem> getGroupedItems() {
@@ -101,32 +230,76 @@ public class SummaryHandler {
 	public List<PrintFormatItem> getSummarizedItems() {
 		return summarizedItems;
 	}
-
-	public Map<Integer, Map<Row, Map<Integer, SummaryFunction>>> getSummary() {
-		return summary;
+	
+	/**
+	 * Grand totals of all rows by print format item
+	 * @return
+	 */
+	public Map<Integer, SummaryFunction> getTotals() {
+		return totals;
+	}
+	
+	/**
+	 * Set grand total of item summarized out of handler
+	 * @param printFormatItemId
+	 * @param function
+	 * @return
+	 */
+	public SummaryHandler withTotal(int printFormatItemId, SummaryFunction function) {
+		totals.put(printFormatItemId, function);
+		return this;
 	}
 	
+	/**
+	 * Get summary rows, for streaming it are the rows already sent
+	 * @return
+	 */
 	public List<Row> getAsRows() {
+		if(isStreaming()) {
+			finish();
+			return streamedRows;
+		}
 		List<Row> rows = new ArrayList<Row>();
-		AtomicBoolean isFirst = new AtomicBoolean(true);
-		groupedItems.forEach(groupItem -> {
-			Map<Row, Map<Integer, SummaryFunction>> groupTotals = Optional.ofNullable(summary.get(groupItem.getPrintFormatItemId())).orElse(new HashMap<Row, Map<Integer,SummaryFunction>>());
-			groupTotals.keySet().forEach(groupValueRow -> {
-				Map<Integer, SummaryFunction> summaryValue = groupTotals.get(groupValueRow);
-				summarizedItems.forEach(sumItem -> {
-					SummaryFunction function = summaryValue.get(sumItem.getPrintFormatItemId());
-					groupValueRow.withCell(sumItem.getPrintFormatItemId(), Cell.newInstance().withValue(function.getValue(SummaryFunction.F_SUM)).withFunction(function));
-				});
-				rows.add(groupValueRow.withSummaryRow(true));
+		summary.forEach(groups -> {
+			groups.values().forEach(group -> {
+				group.fill();
+				rows.add(group.row);
 			});
-			isFirst.set(false);
 		});
 		return rows;
 	}
 	
+	/**
+	 * Summary of a group: the summary row and functions by summarized item
+	 */
+	private class GroupSummary {
+		private final GroupKey key;
+		private final Row row;
+		private final SummaryFunction[] functions;
+		
+		private GroupSummary(GroupKey key, Row row, SummaryFunction[] functions) {
+			this.key = key;
+			this.row = row;
+			this.functions = functions;
+		}
+		
+		private void addValues(BigDecimal[] values) {
+			for (int index = 0; index < functions.length; index++) {
+				functions[index].addValue(values[index]);
+			}
+		}
+		
+		private void fill() {
+			for (int index = 0; index < functions.length; index++) {
+				SummaryFunction function = functions[index];
+				row.withCell(summarizedItems.get(index).getPrintFormatItemId(), Cell.newInstance().withValue(function.getSumValue()).withFunction(function));
+			}
+		}
+	}
+	
 	@Override
 	public String toString() {
 		return "SummaryHandler [groupedItems=" + groupedItems + ", summarizedItems=" + summarizedItems + ", summary="
-				+ summary + ", completeSummary=" + completeSummary + "]";
+				+ summary + ", totals=" + totals + "]";
 	}
 }
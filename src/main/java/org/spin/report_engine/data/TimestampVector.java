@@ -0,0 +1,69 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.data;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+/**
+ * Column of timestamp values kept as epoch milliseconds, the nanoseconds
+ * are kept only if some value has fraction of millisecond
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+class TimestampVector extends ColumnVector {
+
+	private long[] times = new long[0];
+	private int[] nanos;
+
+	@Override
+	boolean isSupported(Object value) {
+		return value == null || value instanceof Timestamp;
+	}
+
+	@Override
+	protected void ensureValueCapacity(int capacity) {
+		if(capacity > times.length) {
+			int newCapacity = getNewCapacity(times.length, capacity);
+			times = Arrays.copyOf(times, newCapacity);
+			if(nanos != null) {
+				nanos = Arrays.copyOf(nanos, newCapacity);
+			}
+		}
+	}
+
+	@Override
+	protected Object getNotNullValue(int index) {
+		Timestamp value = new Timestamp(times[index]);
+		if(nanos != null) {
+			value.setNanos(nanos[index]);
+		}
+		return value;
+	}
+
+	@Override
+	protected void setNotNullValue(int index, Object value) {
+		Timestamp timestamp = (Timestamp) value;
+		times[index] = timestamp.getTime();
+		if(nanos == null && timestamp.getNanos() % 1000000 != 0) {
+			nanos = new int[times.length];
+			for (int position = 0; position < times.length; position++) {
+				nanos[position] = (int) Math.floorMod(times[position], 1000L) * 1000000;
+			}
+		}
+		if(nanos != null) {
+			nanos[index] = timestamp.getNanos();
+		}
+	}
+}
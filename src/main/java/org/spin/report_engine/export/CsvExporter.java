@@ -0,0 +1,351 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.adempiere.exceptions.AdempiereException;
+import org.compiere.util.DisplayType;
+import org.compiere.util.Language;
+import org.compiere.util.Util;
+import org.spin.report_engine.data.Cell;
+import org.spin.report_engine.data.ColumnInfo;
+import org.spin.report_engine.data.ReportInfo;
+import org.spin.report_engine.data.Row;
+import org.spin.report_engine.mapper.IColumnMapping;
+import org.spin.report_engine.mapper.MappingRegistry;
+
+/**
+ * Report CSV / TSV Representation, the rows are encoded as UTF-8 to a reused buffer
+ * and written to a file channel, optionally compressed with gzip
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class CsvExporter implements IReportEngineExporter {
+
+	/**	Size of write buffer	*/
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/**	Max bytes of a UTF-8 character	*/
+	private static final int MAX_CHARACTER_BYTES = 4;
+
+	public static CsvExporter newInstance() {
+		return new CsvExporter();
+	}
+
+	/**
+	 * Get exporter for extension: csv, tsv, csv.gz or tsv.gz
+	 * @param extension
+	 * @return
+	 */
+	public static CsvExporter newInstance(String extension) {
+		return newInstance()
+			.withDelimiter(extension.startsWith("tsv")? '\t': ',')
+			.withCompressed(extension.endsWith(".gz"))
+		;
+	}
+
+	private CsvExporter() {
+		language = Language.getLoginLanguage();
+	}
+
+	private char delimiter = ',';
+	private char quote = '"';
+	private boolean isAlwaysQuote = false;
+	private boolean isCompressed = false;
+	private Language language;
+	/**	Buffer reused for all rows	*/
+	private ByteBuffer buffer;
+	private File file;
+	private WritableByteChannel channel;
+	private List<ColumnInfo> columns;
+	private IColumnMapping[] columnMappings;
+
+	public char getDelimiter() {
+		return delimiter;
+	}
+
+	public CsvExporter withDelimiter(char delimiter) {
+		this.delimiter = delimiter;
+		return this;
+	}
+
+	public char getQuote() {
+		return quote;
+	}
+
+	public CsvExporter withQuote(char quote) {
+		this.quote = quote;
+		return this;
+	}
+
+	public boolean isAlwaysQuote() {
+		return isAlwaysQuote;
+	}
+
+	/**
+	 * Quote all values, by default only values with delimiter, quote or line breaks are quoted
+	 * @param isAlwaysQuote
+	 * @return
+	 */
+	public CsvExporter withAlwaysQuote(boolean isAlwaysQuote) {
+		this.isAlwaysQuote = isAlwaysQuote;
+		return this;
+	}
+
+	public boolean isCompressed() {
+		return isCompressed;
+	}
+
+	public CsvExporter withCompressed(boolean isCompressed) {
+		this.isCompressed = isCompressed;
+		return this;
+	}
+
+	private String getExtension() {
+		String extension = delimiter == '\t'? ".tsv": ".csv";
+		if(isCompressed()) {
+			extension += ".gz";
+		}
+		return extension;
+	}
+
+	@Override
+	public void begin(ReportInfo reportInfo) {
+		columns = reportInfo.getColumns();
+		MappingRegistry.RequestScope mappings = MappingRegistry.getInstance().newRequestScope();
+		columnMappings = columns.stream()
+			.map(columnInfo -> mappings.getMapping(columnInfo.getMappingClassName()))
+			.toArray(IColumnMapping[]::new)
+		;
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		try {
+			file = File.createTempFile("Report_Engine_", getExtension());
+			FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			if(isCompressed()) {
+				channel = Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(fileChannel), BUFFER_SIZE));
+			} else {
+				channel = fileChannel;
+			}
+			//	Header
+			for (int columnNumber = 0; columnNumber < columns.size(); columnNumber++) {
+				if(columnNumber > 0) {
+					putCharacter(delimiter);
+				}
+				putValue(columns.get(columnNumber).getTitle());
+			}
+			putLineBreak();
+		} catch (IOException e) {
+			discard();
+			throw new AdempiereException(e);
+		}
+	}
+
+	@Override
+	public void writeRow(Row row) {
+		try {
+			for (int columnNumber = 0; columnNumber < columns.size(); columnNumber++) {
+				if(columnNumber > 0) {
+					putCharacter(delimiter);
+				}
+				ColumnInfo columnInfo = columns.get(columnNumber);
+				Cell cell = row.getCell(columnInfo.getPrintFormatItemId());
+				//	Apply Mask, only for cells that are not mapped by report
+				IColumnMapping mapping = columnMappings[columnNumber];
+				if(mapping != null && !cell.isFormatted()) {
+					mapping.processValue(columnInfo.getPrintformatItem(), language, cell);
+				}
+				putValue(getValue(columnInfo.getDisplayTypeId(), cell));
+			}
+			putLineBreak();
+		} catch (IOException e) {
+			discard();
+			throw new AdempiereException(e);
+		}
+	}
+
+	@Override
+	public String end() {
+		try {
+			flush();
+			close();
+		} catch (Exception e) {
+			discard();
+			throw e instanceof AdempiereException? (AdempiereException) e: new AdempiereException(e);
+		}
+		return ExportUploader.newInstance(getExtension()).upload(file);
+	}
+
+	@Override
+	public void abort() {
+		discard();
+	}
+
+	/**
+	 * Numbers are written without grouping for integration, other values as displayed
+	 * @param displayType
+	 * @param cell
+	 * @return
+	 */
+	private String getValue(int displayType, Cell cell) {
+		Object value = cell.getValue();
+		if(value == null) {
+			return null;
+		}
+		if(DisplayType.isNumeric(displayType)) {
+			if(value instanceof BigDecimal) {
+				return ((BigDecimal) value).toPlainString();
+			}
+			return value.toString();
+		}
+		String displayValue = cell.getDisplayValue();
+		if(!Util.isEmpty(displayValue)) {
+			return displayValue;
+		}
+		if(DisplayType.isLookup(displayType)) {
+			return null;
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Put value with quotes if it is required
+	 * @param value
+	 * @throws IOException
+	 */
+	private void putValue(String value) throws IOException {
+		if(value == null) {
+			if(isAlwaysQuote()) {
+				putCharacter(quote);
+				putCharacter(quote);
+			}
+			return;
+		}
+		boolean isQuoted = isAlwaysQuote() || isQuoteRequired(value);
+		if(isQuoted) {
+			putCharacter(quote);
+		}
+		int length = value.length();
+		for (int index = 0; index < length; index++) {
+			char character = value.charAt(index);
+			if(isQuoted && character == quote) {
+				putCharacter(quote);
+			}
+			if(Character.isHighSurrogate(character) && index + 1 < length
+					&& Character.isLowSurrogate(value.charAt(index + 1))) {
+				putCodePoint(Character.toCodePoint(character, value.charAt(++index)));
+			} else {
+				putCharacter(character);
+			}
+		}
+		if(isQuoted) {
+			putCharacter(quote);
+		}
+	}
+
+	private boolean isQuoteRequired(String value) {
+		int length = value.length();
+		for (int index = 0; index < length; index++) {
+			char character = value.charAt(index);
+			if(character == delimiter
+					|| character == quote
+					|| character == '\n'
+					|| character == '\r') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void putLineBreak() throws IOException {
+		putCharacter('\r');
+		putCharacter('\n');
+	}
+
+	/**
+	 * Encode a character of basic plane as UTF-8, a lone surrogate is written as '?'
+	 * @param character
+	 * @throws IOException
+	 */
+	private void putCharacter(char character) throws IOException {
+		if(Character.isSurrogate(character)) {
+			character = '?';
+		}
+		putCodePoint(character);
+	}
+
+	private void putCodePoint(int codePoint) throws IOException {
+		if(buffer.remaining() < MAX_CHARACTER_BYTES) {
+			flush();
+		}
+		if(codePoint < 0x80) {
+			buffer.put((byte) codePoint);
+		} else if(codePoint < 0x800) {
+			buffer.put((byte) (0xC0 | (codePoint >> 6)));
+			buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+		} else if(codePoint < 0x10000) {
+			buffer.put((byte) (0xE0 | (codePoint >> 12)));
+			buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+			buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+		} else {
+			buffer.put((byte) (0xF0 | (codePoint >> 18)));
+			buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+			buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+			buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void close() {
+		if(channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new AdempiereException(e);
+		} finally {
+			channel = null;
+		}
+	}
+
+	/**
+	 * Close channel and delete file after an error
+	 */
+	private void discard() {
+		try {
+			close();
+		} catch (Exception e) {
+			//	Error is thrown by caller
+		}
+		if(file != null) {
+			file.delete();
+		}
+	}
+}
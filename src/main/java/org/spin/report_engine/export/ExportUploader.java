@@ -0,0 +1,269 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.export;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.adempiere.exceptions.AdempiereException;
+import org.compiere.model.MClientInfo;
+import org.compiere.util.CLogger;
+import org.compiere.util.Env;
+import org.spin.eca62.support.IS3;
+import org.spin.eca62.support.ResourceMetadata;
+import org.spin.model.MADAppRegistration;
+import org.spin.util.support.AppSupportHandler;
+import org.spin.util.support.IAppSupport;
+
+/**
+ * Upload of exported file to file handler of client. By default the file is written to a
+ * bounded pipe in background while the handler reads it, then generation and upload overlap
+ * and nothing is written to disk. For handlers that need the content length the file can be
+ * written to a temporary file that is deleted after upload
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class ExportUploader {
+
+	/**	Size of pipe buffer	*/
+	private static final int PIPE_BUFFER_SIZE = 1024 * 1024;
+	/**	Executor of writers	*/
+	private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "ReportEngine-ExportWriter");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static final CLogger logger = CLogger.getCLogger(ExportUploader.class);
+
+	/**	File extension	*/
+	private String extension;
+	/**	Write to temporary file before upload	*/
+	private boolean isTemporaryFile;
+
+	/**
+	 * Writer of file content
+	 */
+	@FunctionalInterface
+	public interface ContentWriter {
+		public void write(OutputStream outputStream) throws Exception;
+	}
+
+	public static ExportUploader newInstance(String extension) {
+		return new ExportUploader(extension);
+	}
+
+	private ExportUploader(String extension) {
+		this.extension = extension;
+	}
+
+	public boolean isTemporaryFile() {
+		return isTemporaryFile;
+	}
+
+	public ExportUploader withTemporaryFile(boolean isTemporaryFile) {
+		this.isTemporaryFile = isTemporaryFile;
+		return this;
+	}
+
+	/**
+	 * Write content and push it to file handler
+	 * @param writer
+	 * @return resource name
+	 */
+	public String upload(ContentWriter writer) {
+		IS3 fileHandler = getFileHandler();
+		try {
+			if(isTemporaryFile()) {
+				return uploadFromFile(fileHandler, writer);
+			}
+			return uploadFromPipe(fileHandler, writer);
+		} catch (AdempiereException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AdempiereException(e);
+		}
+	}
+
+	private String uploadFromPipe(IS3 fileHandler, ContentWriter writer) throws Exception {
+		String fileName = "Report_Engine_" + UUID.randomUUID() + extension;
+		PipedInputStream inputStream = new PipedInputStream(PIPE_BUFFER_SIZE);
+		PipedOutputStream outputStream = new PipedOutputStream(inputStream);
+		//	The error is set before close pipe, then the reader can see it at end of stream
+		AtomicReference<Exception> writerError = new AtomicReference<Exception>();
+		CompletableFuture<Void> writing = CompletableFuture.runAsync(() -> {
+			try {
+				writer.write(outputStream);
+			} catch (Exception e) {
+				writerError.set(e);
+				throw new CompletionException(e);
+			} finally {
+				try {
+					outputStream.close();
+				} catch (IOException e) {
+					logger.warning(e.getLocalizedMessage());
+				}
+			}
+		}, executor);
+		String resourceName;
+		try (InputStream input = new WriterInputStream(inputStream, writerError)) {
+			resourceName = fileHandler.putResource(getResourceMetadata(fileName), input);
+		} catch (Exception e) {
+			//	Reader is closed, then the writer fails and ends, the error of upload is kept
+			try {
+				waitWriter(writing);
+			} catch (Exception writerException) {
+				if(writerException != e.getCause()) {
+					e.addSuppressed(writerException);
+				}
+			}
+			throw e;
+		}
+		waitWriter(writing);
+		return resourceName;
+	}
+
+	/**
+	 * Input of pipe that fails at end of stream when the writer failed, then an
+	 * incomplete file is not uploaded as complete
+	 */
+	private static class WriterInputStream extends FilterInputStream {
+
+		private final AtomicReference<Exception> writerError;
+
+		WriterInputStream(InputStream inputStream, AtomicReference<Exception> writerError) {
+			super(inputStream);
+			this.writerError = writerError;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return validateWriter(super.read());
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			return validateWriter(super.read(buffer, offset, length));
+		}
+
+		private int validateWriter(int result) throws IOException {
+			if(result == -1 && writerError.get() != null) {
+				throw new IOException("Export writer failed", writerError.get());
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Push a file already written and delete it
+	 * @param file
+	 * @return resource name
+	 */
+	public String upload(File file) {
+		try {
+			return uploadFile(getFileHandler(), file);
+		} catch (AdempiereException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AdempiereException(e);
+		}
+	}
+
+	private String uploadFromFile(IS3 fileHandler, ContentWriter writer) throws Exception {
+		File file = File.createTempFile("Report_Engine_", extension);
+		try (OutputStream output = new FileOutputStream(file)) {
+			writer.write(output);
+		} catch (Exception e) {
+			file.delete();
+			throw e;
+		}
+		return uploadFile(fileHandler, file);
+	}
+
+	private String uploadFile(IS3 fileHandler, File file) throws Exception {
+		try (InputStream input = new FileInputStream(file)) {
+			return fileHandler.putResource(getResourceMetadata(file.getName()), input);
+		} finally {
+			if(!file.delete()) {
+				logger.warning("Temporary file not deleted: " + file.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Wait for end of writer, the error of writer is thrown
+	 * @param writing
+	 * @throws Exception
+	 */
+	private void waitWriter(CompletableFuture<Void> writing) throws Exception {
+		try {
+			writing.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof CompletionException && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			if(cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new AdempiereException(cause);
+		}
+	}
+
+	private ResourceMetadata getResourceMetadata(String fileName) {
+		return ResourceMetadata.newInstance()
+			.withClientId(Env.getAD_Client_ID(Env.getCtx()))
+			.withUserId(Env.getAD_User_ID(Env.getCtx()))
+			.withContainerType(ResourceMetadata.ContainerType.RESOURCE)
+			.withContainerId("tmp")
+			.withName(fileName)
+		;
+	}
+
+	/**
+	 * Get file handler of client
+	 * @return
+	 */
+	private IS3 getFileHandler() {
+		MClientInfo clientInfo = MClientInfo.get(Env.getCtx());
+		if(clientInfo.getFileHandler_ID() <= 0) {
+			throw new AdempiereException("@FileHandler_ID@ @NotFound@");
+		}
+		MADAppRegistration genericConnector = MADAppRegistration.getById(Env.getCtx(), clientInfo.getFileHandler_ID(), null);
+		if(genericConnector == null) {
+			throw new AdempiereException("@AD_AppRegistration_ID@ @NotFound@");
+		}
+		IAppSupport supportedApi = AppSupportHandler.getInstance().getAppSupport(genericConnector);
+		if(supportedApi == null) {
+			throw new AdempiereException("@AD_AppSupport_ID@ @NotFound@");
+		}
+		if(!IS3.class.isAssignableFrom(supportedApi.getClass())) {
+			throw new AdempiereException("@AD_AppSupport_ID@ @Unsupported@");
+		}
+		return (IS3) supportedApi;
+	}
+}
@@ -14,7 +14,10 @@
  ************************************************************************************/
 package org.spin.report_engine.export;
 
+import java.util.List;
+
 import org.spin.report_engine.data.ReportInfo;
+import org.spin.report_engine.data.Row;
 
 /**
  * Report Xlsx Representation
@@ -27,5 +30,49 @@ public interface IReportEngineExporter {
 	 * @param reportInfo
 	 * @return
 	 */
-	public String export(ReportInfo reportInfo);
+	public default String export(ReportInfo reportInfo) {
+		try {
+			begin(reportInfo);
+			List<Row> rows = reportInfo.isSummary()? reportInfo.getSummaryRows(): reportInfo.getCompleteRows();
+			rows.forEach(this::writeRow);
+			return end();
+		} catch (RuntimeException e) {
+			abort();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Validate if record count and grand total are written before rows, then they are
+	 * calculated before read rows
+	 * @return
+	 */
+	public default boolean isTotalsBeforeRows() {
+		return false;
+	}
+	
+	/**
+	 * Start export with columns of report info, the rows can be written while are read
+	 * @param reportInfo
+	 */
+	public void begin(ReportInfo reportInfo);
+	
+	/**
+	 * Write a row after previous rows
+	 * @param row
+	 */
+	public void writeRow(Row row);
+	
+	/**
+	 * Complete export and return a file path
+	 * @return
+	 */
+	public String end();
+	
+	/**
+	 * Release resources of an export that is not completed (temporary files)
+	 */
+	public default void abort() {
+		//	Nothing to release
+	}
 }
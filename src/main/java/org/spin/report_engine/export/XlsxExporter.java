@@ -14,9 +14,6 @@
  ************************************************************************************/
 package org.spin.report_engine.export;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.text.DecimalFormat;
@@ -45,23 +42,16 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xssf.streaming.SXSSFSheet;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.compiere.Adempiere;
-import org.compiere.model.MClientInfo;
-import org.compiere.print.MPrintFormat;
 import org.compiere.print.MPrintPaper;
 import org.compiere.util.DisplayType;
 import org.compiere.util.Env;
 import org.compiere.util.Language;
 import org.compiere.util.Util;
-import org.spin.eca62.support.IS3;
-import org.spin.eca62.support.ResourceMetadata;
-import org.spin.model.MADAppRegistration;
 import org.spin.report_engine.data.ColumnInfo;
 import org.spin.report_engine.data.ReportInfo;
-import org.spin.report_engine.mapper.DefaultMapping;
 import org.spin.report_engine.mapper.IColumnMapping;
-import org.spin.report_engine.util.ClassLoaderMapping;
-import org.spin.util.support.AppSupportHandler;
-import org.spin.util.support.IAppSupport;
+import org.spin.report_engine.mapper.MappingRegistry;
+import org.spin.report_engine.mapper.ValueFormatter;
 
 /**
  * Report Xlsx Representation
@@ -79,6 +69,34 @@ public class XlsxExporter implements IReportEngineExporter {
 		dataFormat = workBook.createDataFormat();
 	}
 	
+	/**
+	 * Measure columns with fonts (slow) instead of estimate width from characters written
+	 * @param isAutoSizeColumns
+	 * @return
+	 */
+	public XlsxExporter withAutoSizeColumns(boolean isAutoSizeColumns) {
+		this.isAutoSizeColumns = isAutoSizeColumns;
+		return this;
+	}
+	
+	public boolean isAutoSizeColumns() {
+		return isAutoSizeColumns;
+	}
+	
+	/**
+	 * Write workbook to a temporary file before upload, for file handlers that need the content length
+	 * @param isTemporaryFile
+	 * @return
+	 */
+	public XlsxExporter withTemporaryFile(boolean isTemporaryFile) {
+		this.isTemporaryFile = isTemporaryFile;
+		return this;
+	}
+	
+	public boolean isTemporaryFile() {
+		return isTemporaryFile;
+	}
+	
 	private SXSSFWorkbook workBook;
 	private MPrintPaper printPaper;
 	private Font fontHeader = null;
@@ -87,6 +105,19 @@ public class XlsxExporter implements IReportEngineExporter {
 	private Language language;
 	/** Styles cache */
 	private Map<String, CellStyle> styles = new HashMap<String, CellStyle>();
+	/**	Sheet being written	*/
+	private Sheet sheet;
+	private List<ColumnInfo> columns;
+	private IColumnMapping[] columnMappings;
+	/**	Rows written without header	*/
+	private int rowNumber;
+	/**	Max characters written by column	*/
+	private int[] columnCharactersSize;
+	private boolean isAutoSizeColumns = false;
+	private boolean isTemporaryFile = false;
+	/**	Width limits in characters	*/
+	private static final int MINIMUM_COLUMN_WIDTH = 4;
+	private static final int MAXIMUM_COLUMN_WIDTH = 80;
 	
 	private Language getLanguage() {
 		return language;
@@ -95,7 +126,9 @@ public class XlsxExporter implements IReportEngineExporter {
 	private Sheet createSheet() {
 		SXSSFSheet sheet = (SXSSFSheet) workBook.createSheet();
 		formatPage(sheet);
-		sheet.trackAllColumnsForAutoSizing();
+		if(isAutoSizeColumns()) {
+			sheet.trackAllColumnsForAutoSizing();
+		}
 		createHeaderFooter(sheet);
 		return sheet;
 	}
@@ -105,8 +138,7 @@ public class XlsxExporter implements IReportEngineExporter {
 	}
 	
 	private void setReportInfo(ReportInfo reportInfo) {
-		MPrintFormat printFormat = new MPrintFormat(Env.getCtx(), reportInfo.getPrintFormatId(), null);
-		printPaper = MPrintPaper.get(printFormat.getAD_PrintPaper_ID());
+		printPaper = MPrintPaper.get(reportInfo.getPrintFormat().getPrintPaperId());
 	}
 	
 	private void formatPage(Sheet sheet) {
@@ -157,17 +189,17 @@ public class XlsxExporter implements IReportEngineExporter {
 		footer.setLeft(Adempiere.ADEMPIERE_R);
 		footer.setCenter(Env.getHeader(Env.getCtx(), 0));
 		Timestamp now = new Timestamp(System.currentTimeMillis());
-		footer.setRight(DisplayType.getDateFormat(DisplayType.DateTime, getLanguage()).format(now));
+		footer.setRight(ValueFormatter.getInstance().formatDate(DisplayType.DateTime, getLanguage(), null, now));
 	}
 	
 	@Override
-	public String export(ReportInfo reportInfo) {
+	public void begin(ReportInfo reportInfo) {
 		setReportInfo(reportInfo);
 		//	Create Sheet with report info name
-		Sheet sheet = createSheet();
+		sheet = createSheet();
 		//	create header
 		Row headerRow = sheet.createRow(0);
-		List<ColumnInfo> columns = reportInfo.getColumns();
+		columns = reportInfo.getColumns();
 		IntStream.range(0, columns.size())
 		.forEach(cellNumber -> {
 			Cell sheetCell = headerRow.createCell(cellNumber);
@@ -178,76 +210,148 @@ public class XlsxExporter implements IReportEngineExporter {
 			CellStyle style = getHeaderStyle(cellNumber);
 			sheetCell.setCellStyle(style);
 		});
-		//	Export content
-		List<org.spin.report_engine.data.Row> rows = reportInfo.isSummary()? reportInfo.getSummaryRows(): reportInfo.getCompleteRows();
-		IntStream.range(0, rows.size()).forEach(rowNumber -> {
-			Row sheetRow = sheet.createRow(rowNumber + 1);
-			IntStream.range(0, columns.size())
-			.forEach(columnNumber -> {
-				Cell sheetCell = sheetRow.createCell(columnNumber);
-				ColumnInfo columnInfo = columns.get(columnNumber);
-				org.spin.report_engine.data.Row rowValue = rows.get(rowNumber);
-				org.spin.report_engine.data.Cell cell = rowValue.getCell(columnInfo.getPrintFormatItemId());
-				//	Apply Default Mask
-				if(!Util.isEmpty(columnInfo.getMappingClassName())) {
-					IColumnMapping customMapping = ClassLoaderMapping.loadClass(columnInfo.getMappingClassName());
-					if(customMapping != null) {
-						customMapping.processValue(columnInfo.getPrintformatItem(), language, cell);
+		MappingRegistry.RequestScope mappings = MappingRegistry.getInstance().newRequestScope();
+		columnMappings = columns.stream()
+			.map(columnInfo -> mappings.getMapping(columnInfo.getMappingClassName()))
+			.toArray(IColumnMapping[]::new)
+		;
+		columnCharactersSize = columns.stream()
+			.mapToInt(columnInfo -> getLongestWordSize(columnInfo.getTitle()))
+			.toArray()
+		;
+		rowNumber = 0;
+	}
+	
+	@Override
+	public void writeRow(org.spin.report_engine.data.Row rowValue) {
+		Row sheetRow = sheet.createRow(rowNumber + 1);
+		for (int columnNumber = 0; columnNumber < columns.size(); columnNumber++) {
+			Cell sheetCell = sheetRow.createCell(columnNumber);
+			ColumnInfo columnInfo = columns.get(columnNumber);
+			org.spin.report_engine.data.Cell cell = rowValue.getCell(columnInfo.getPrintFormatItemId());
+			//	Apply Mask, only for cells that are not mapped by report
+			IColumnMapping mapping = columnMappings[columnNumber];
+			if(mapping != null && !cell.isFormatted()) {
+				mapping.processValue(columnInfo.getPrintformatItem(), language, cell);
+			}
+			int displayType = columnInfo.getDisplayTypeId();
+			Object valueasObject = cell.getValue();
+			if(valueasObject != null) {
+				if (DisplayType.isDate(displayType)) {
+					Timestamp value = (Timestamp)valueasObject;
+					sheetCell.setCellValue(value);
+				} else if (DisplayType.isNumeric(displayType)) {
+					double value = 0;
+					if (valueasObject instanceof Number) {
+						value = ((Number) valueasObject).doubleValue();
 					}
+					sheetCell.setCellValue(value);
+				} else if (DisplayType.YesNo == displayType) {
+					String value = Util.stripDiacritics(cell.getDisplayValue());
+					sheetCell.setCellValue(sheet.getWorkbook().getCreationHelper().createRichTextString(value));
 				} else {
-					DefaultMapping.newInstance().processValue(columnInfo.getPrintformatItem(), language, cell);
-				}
-				int displayType = columnInfo.getDisplayTypeId();
-				Object valueasObject = cell.getValue();
-				if(valueasObject != null) {
-					if (DisplayType.isDate(displayType)) {
-						Timestamp value = (Timestamp)valueasObject;
-						sheetCell.setCellValue(value);
-					} else if (DisplayType.isNumeric(displayType)) {
-						double value = 0;
-						if (valueasObject instanceof Number) {
-							value = ((Number) valueasObject).doubleValue();
-						}
-						sheetCell.setCellValue(value);
-					} else if (DisplayType.YesNo == displayType) {
-						String value = Util.stripDiacritics(cell.getDisplayValue());
-						sheetCell.setCellValue(sheet.getWorkbook().getCreationHelper().createRichTextString(value));
-					} else {
-						String displayValue = cell.getDisplayValue();
-						if(Util.isEmpty(displayValue)) {
-							if(!DisplayType.isLookup(displayType)) {
-								if(valueasObject instanceof BigDecimal) {
-									sheetCell.setCellValue(((BigDecimal) valueasObject).doubleValue());
-								} else if (valueasObject instanceof Integer) {
-									sheetCell.setCellValue((Integer) valueasObject);
-								} else if (valueasObject instanceof String) {
-									displayValue = (String) valueasObject;
-									displayValue = Util.stripDiacritics(displayValue);
-									sheetCell.setCellValue(sheet.getWorkbook().getCreationHelper().createRichTextString(displayValue));
-								} else if (valueasObject instanceof Boolean) {
-									sheetCell.setCellValue((Boolean) valueasObject);
-								} else if(valueasObject instanceof Timestamp) {
-									Timestamp value = (Timestamp) valueasObject;
-									sheetCell.setCellValue(value);
-								}
+					String displayValue = cell.getDisplayValue();
+					if(Util.isEmpty(displayValue)) {
+						if(!DisplayType.isLookup(displayType)) {
+							if(valueasObject instanceof BigDecimal) {
+								sheetCell.setCellValue(((BigDecimal) valueasObject).doubleValue());
+							} else if (valueasObject instanceof Integer) {
+								sheetCell.setCellValue((Integer) valueasObject);
+							} else if (valueasObject instanceof String) {
+								displayValue = (String) valueasObject;
+								displayValue = Util.stripDiacritics(displayValue);
+								sheetCell.setCellValue(sheet.getWorkbook().getCreationHelper().createRichTextString(displayValue));
+							} else if (valueasObject instanceof Boolean) {
+								sheetCell.setCellValue((Boolean) valueasObject);
+							} else if(valueasObject instanceof Timestamp) {
+								Timestamp value = (Timestamp) valueasObject;
+								sheetCell.setCellValue(value);
 							}
-						} else {
-							displayValue = Util.stripDiacritics(displayValue);
-							sheetCell.setCellValue(sheet.getWorkbook().getCreationHelper().createRichTextString(displayValue));
 						}
+					} else {
+						displayValue = Util.stripDiacritics(displayValue);
+						sheetCell.setCellValue(sheet.getWorkbook().getCreationHelper().createRichTextString(displayValue));
 					}
 				}
-				//
-				CellStyle style = getStyle(rowNumber, columnNumber, rowValue.isSummaryRow(), displayType, null);
-				sheetCell.setCellStyle(style);
-			});
-		});
+			}
+			//
+			CellStyle style = getStyle(rowNumber, columnNumber, rowValue.isSummaryRow(), displayType, null);
+			sheetCell.setCellStyle(style);
+			addCharactersSize(columnNumber, cell, rowValue.isSummaryRow());
+		}
+		rowNumber++;
+	}
+	
+	@Override
+	public String end() {
 		IntStream.range(0, columns.size())
-		.forEach(columnNumber -> sheet.autoSizeColumn(columnNumber));
+		.forEach(columnNumber -> {
+			if(isAutoSizeColumns()) {
+				sheet.autoSizeColumn(columnNumber);
+			} else {
+				sheet.setColumnWidth(columnNumber, getColumnWidth(columnNumber));
+			}
+		});
 		sheet.createFreezePane(0, 1);
 		return writeFile();
 	}
 	
+	@Override
+	public void abort() {
+		workBook.dispose();
+	}
+	
+	/**
+	 * Keep the max characters size of column
+	 * @param columnNumber
+	 * @param cell
+	 * @param isSummaryRow
+	 */
+	private void addCharactersSize(int columnNumber, org.spin.report_engine.data.Cell cell, boolean isSummaryRow) {
+		String displayValue = cell.getDisplayValue();
+		if(Util.isEmpty(displayValue)) {
+			if(cell.getValue() == null) {
+				return;
+			}
+			displayValue = cell.getValue().toString();
+		}
+		int size = displayValue.length();
+		//	Bold font
+		if(isSummaryRow) {
+			size += size / 10 + 1;
+		}
+		if(size > columnCharactersSize[columnNumber]) {
+			columnCharactersSize[columnNumber] = size;
+		}
+	}
+	
+	/**
+	 * Get width estimated from characters (1/256 of character width), the header can wrap by words
+	 * @param columnNumber
+	 * @return
+	 */
+	private int getColumnWidth(int columnNumber) {
+		int size = Math.min(Math.max(columnCharactersSize[columnNumber], MINIMUM_COLUMN_WIDTH), MAXIMUM_COLUMN_WIDTH);
+		//	Padding of cell
+		return (size + 2) * 256;
+	}
+	
+	/**
+	 * Header is wrapped, so the longest word is the size required
+	 * @param title
+	 * @return
+	 */
+	private int getLongestWordSize(String title) {
+		if(Util.isEmpty(title)) {
+			return 0;
+		}
+		int size = 0;
+		for (String word : title.trim().split("\\s+")) {
+			size = Math.max(size, word.length());
+		}
+		return size;
+	}
+	
 	private CellStyle getHeaderStyle(int col) {
 		String key = "header-"+col;
 		CellStyle cs_header = styles.get(key);
@@ -286,7 +390,7 @@ public class XlsxExporter implements IReportEngineExporter {
 				if (formatPattern != null) {
 					cs.setDataFormat(dataFormat.getFormat(formatPattern));
 				} else {
-					SimpleDateFormat sdf = DisplayType.getDateFormat(DisplayType.Date, getLanguage());
+					SimpleDateFormat sdf = ValueFormatter.getInstance().getDateFormat(DisplayType.Date, getLanguage(), null);
 					cs.setDataFormat(dataFormat.getFormat(sdf.toPattern()));
 				}
 			}
@@ -294,7 +398,7 @@ public class XlsxExporter implements IReportEngineExporter {
 				if (formatPattern != null) {
 					cs.setDataFormat(dataFormat.getFormat(formatPattern));
 				} else {
-					DecimalFormat df = DisplayType.getNumberFormat(displayType, getLanguage());
+					DecimalFormat df = ValueFormatter.getInstance().getNumberFormat(displayType, getLanguage(), null);
 					String format = getFormatString(df, isHighlightNegativeNumbers);
 					cs.setDataFormat(dataFormat.getFormat(format));
 				}
@@ -370,40 +474,12 @@ public class XlsxExporter implements IReportEngineExporter {
 	
 	private String writeFile() {
 		try {
-			File file = File.createTempFile("Report_Engine_", ".xlsx");
-			FileOutputStream out = new FileOutputStream(file .getAbsolutePath());
-		    workBook.write(out);
-		    out.close();
-		    workBook.dispose();
-		    //	Push to S3
-		    MClientInfo clientInfo = MClientInfo.get(Env.getCtx());
-		    if(clientInfo.getFileHandler_ID() <= 0) {
-		    	throw new AdempiereException("@FileHandler_ID@ @NotFound@");
-		    }
-		    MADAppRegistration genericConnector = MADAppRegistration.getById(Env.getCtx(), clientInfo.getFileHandler_ID(), null);
-		    if(genericConnector == null) {
-				throw new AdempiereException("@AD_AppRegistration_ID@ @NotFound@");
-			}
-			//	Load
-			IAppSupport supportedApi = AppSupportHandler.getInstance().getAppSupport(genericConnector);
-			if(supportedApi == null) {
-				throw new AdempiereException("@AD_AppSupport_ID@ @NotFound@");
-			}
-			if(!IS3.class.isAssignableFrom(supportedApi.getClass())) {
-				throw new AdempiereException("@AD_AppSupport_ID@ @Unsupported@");
-			}
-			//	Push it
-			IS3 fileHandler = (IS3) supportedApi;
-			ResourceMetadata resourceMetadata = ResourceMetadata.newInstance()
-					.withClientId(Env.getAD_Client_ID(Env.getCtx()))
-					.withUserId(Env.getAD_User_ID(Env.getCtx()))
-					.withContainerType(ResourceMetadata.ContainerType.RESOURCE)
-					.withContainerId("tmp")
-					.withName(file.getName())
-					;
-			return fileHandler.putResource(resourceMetadata, new FileInputStream(file));
-		} catch (Exception e) {
-			throw new AdempiereException(e);
+			return ExportUploader.newInstance(".xlsx")
+				.withTemporaryFile(isTemporaryFile())
+				.upload(workBook::write)
+			;
+		} finally {
+			workBook.dispose();
 		}
 	}
 }
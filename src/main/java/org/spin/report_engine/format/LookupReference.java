@@ -0,0 +1,253 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.format;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.compiere.model.MColumn;
+import org.compiere.model.MLookupFactory;
+import org.compiere.model.MTable;
+import org.compiere.util.DisplayType;
+import org.compiere.util.Env;
+import org.compiere.util.Language;
+import org.compiere.util.Util;
+
+/**
+ * Lookup of display value for a reference that is resolved after read rows.
+ * The query select key and display value of reference table for a list of keys
+ * (IN), then the report query only select the key
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class LookupReference {
+
+	/**	Alias of reference table in lookup query	*/
+	private static final String LOOKUP_ALIAS = "LookupTable";
+	/**	Reference identifier: type and table or reference	*/
+	private String referenceKey;
+	/**	Query until IN of keys	*/
+	private String query;
+	/**	Parameters of query before keys	*/
+	private List<Object> parameters;
+
+	private LookupReference() {
+		parameters = new ArrayList<Object>();
+	}
+
+	public static LookupReference newInstance() {
+		return new LookupReference();
+	}
+
+	public String getReferenceKey() {
+		return referenceKey;
+	}
+
+	public LookupReference withReferenceKey(String referenceKey) {
+		this.referenceKey = referenceKey;
+		return this;
+	}
+
+	public LookupReference withQuery(String query) {
+		this.query = query;
+		return this;
+	}
+
+	public List<Object> getParameters() {
+		return parameters;
+	}
+
+	public LookupReference withParameters(List<Object> parameters) {
+		this.parameters = parameters;
+		return this;
+	}
+
+	/**
+	 * Get query for a quantity of keys, the first column is key and second is display value
+	 * @param keys
+	 * @return
+	 */
+	public String getQuery(int keys) {
+		StringBuffer lookupQuery = new StringBuffer(query).append(" IN (");
+		for (int index = 0; index < keys; index++) {
+			if(index > 0) {
+				lookupQuery.append(", ");
+			}
+			lookupQuery.append("?");
+		}
+		return lookupQuery.append(")").toString();
+	}
+
+	/**
+	 * Get lookup of a print format item, it is null if the reference of item can not be resolved after read rows
+	 * @param item
+	 * @param language
+	 * @return
+	 */
+	public static LookupReference getLookupReference(PrintFormatItem item, Language language) {
+		int referenceId = item.getReferenceId();
+		if(referenceId == DisplayType.TableDir
+				|| (referenceId == DisplayType.Search && item.getReferenceValueId() == 0)) {
+			return getTableDirLookupReference(item.getColumnName(), language);
+		} else if(referenceId == DisplayType.Table
+				|| (referenceId == DisplayType.Search && item.getReferenceValueId() != 0)) {
+			ColumnReference columnReference = ColumnReference.getColumnReference(item.getReferenceValueId());
+			if(columnReference.getTableName() == null) {
+				return null;
+			}
+			StringBuffer displayColumn = new StringBuffer();
+			if(columnReference.isIsValueDisplayed()) {
+				displayColumn.append(LOOKUP_ALIAS).append(".Value").append("|| '_' ||");
+			}
+			displayColumn.append(LOOKUP_ALIAS).append(".").append(columnReference.getDisplayColumn());
+			return newInstance()
+				.withReferenceKey("Table_" + item.getReferenceValueId())
+				.withQuery(getQuery(columnReference, displayColumn.toString()))
+			;
+		} else if(referenceId == DisplayType.List
+				|| (referenceId == DisplayType.Button && item.getReferenceValueId() != 0)) {
+			ColumnReference columnReference = ColumnReference.getColumnReferenceList(language);
+			List<Object> parameters = new ArrayList<Object>();
+			StringBuffer listQuery = new StringBuffer("SELECT ").append(LOOKUP_ALIAS).append(".").append(columnReference.getKeyColumn()).append(", ");
+			if(columnReference.isIsTranslated()) {
+				listQuery.append("COALESCE(Trl.").append(columnReference.getDisplayColumn()).append(", ")
+					.append(LOOKUP_ALIAS).append(".").append(columnReference.getDisplayColumn()).append(")")
+					.append(" FROM ").append(columnReference.getTableName()).append(" ").append(LOOKUP_ALIAS)
+					.append(" LEFT OUTER JOIN ").append(columnReference.getTableName()).append("_Trl Trl ON (")
+					.append("Trl.AD_Ref_List_ID = ").append(LOOKUP_ALIAS).append(".AD_Ref_List_ID")
+					.append(" AND Trl.AD_Language = ?)");
+				parameters.add(language.getAD_Language());
+			} else {
+				listQuery.append(LOOKUP_ALIAS).append(".").append(columnReference.getDisplayColumn())
+					.append(" FROM ").append(columnReference.getTableName()).append(" ").append(LOOKUP_ALIAS);
+			}
+			listQuery.append(" WHERE ").append(LOOKUP_ALIAS).append(".AD_Reference_ID = ?")
+				.append(" AND ").append(LOOKUP_ALIAS).append(".").append(columnReference.getKeyColumn());
+			parameters.add(item.getReferenceValueId());
+			return newInstance()
+				.withReferenceKey("List_" + item.getReferenceValueId())
+				.withQuery(listQuery.toString())
+				.withParameters(parameters)
+			;
+		} else if (referenceId == DisplayType.Location
+				|| referenceId == DisplayType.Account
+				|| referenceId == DisplayType.Locator
+				|| referenceId == DisplayType.PAttribute) {
+			ColumnReference columnReference = ColumnReference.getColumnReferenceSpecial(referenceId);
+			if(columnReference == null) {
+				return null;
+			}
+			return newInstance()
+				.withReferenceKey("Special_" + referenceId)
+				.withQuery(getQuery(columnReference, LOOKUP_ALIAS + "." + columnReference.getDisplayColumn()))
+			;
+		}
+		return null;
+	}
+
+	/**
+	 * Get lookup of identifier columns for records of a table (Record_ID), it is null
+	 * when table is not found or has not a single key column
+	 * @param tableName
+	 * @param language
+	 * @return
+	 */
+	public static LookupReference getRecordLookupReference(String tableName, Language language) {
+		MTable table = MTable.get(Env.getCtx(), tableName);
+		if(table == null || table.getAD_Table_ID() <= 0) {
+			return null;
+		}
+		String[] keyColumns = table.getKeyColumns();
+		if(keyColumns == null
+				|| keyColumns.length != 1) {
+			return null;
+		}
+		String keyColumnName = keyColumns[0];
+		if(keyColumnName.equalsIgnoreCase(table.getTableName() + "_ID")) {
+			LookupReference reference = getTableDirLookupReference(keyColumnName, language);
+			if(reference != null) {
+				return reference;
+			}
+		}
+		return getIdentifierLookupReference(table, keyColumnName);
+	}
+
+	/**
+	 * Lookup of identifier columns of a table with key column of other name, the
+	 * identifiers are separated by '_' as display value of entity. Without identifiers
+	 * the key is displayed
+	 * @param table
+	 * @param keyColumnName
+	 * @return
+	 */
+	private static LookupReference getIdentifierLookupReference(MTable table, String keyColumnName) {
+		StringBuffer displayColumn = new StringBuffer();
+		Arrays.stream(table.getColumns(false))
+			.filter(column -> column.isIdentifier() && !column.isVirtualColumn())
+			.sorted(Comparator.comparing(MColumn::getSeqNo))
+			.forEach(column -> {
+				if(displayColumn.length() > 0) {
+					displayColumn.append(" || '_' || ");
+				}
+				displayColumn.append("COALESCE(CAST(").append(LOOKUP_ALIAS).append(".").append(column.getColumnName())
+					.append(" AS VARCHAR(255)), '')");
+			})
+		;
+		if(displayColumn.length() == 0) {
+			displayColumn.append("CAST(").append(LOOKUP_ALIAS).append(".").append(keyColumnName).append(" AS VARCHAR(255))");
+		}
+		return newInstance()
+			.withReferenceKey("Record_" + table.getTableName())
+			.withQuery("SELECT " + LOOKUP_ALIAS + "." + keyColumnName + ", " + displayColumn
+				+ " FROM " + table.getTableName() + " " + LOOKUP_ALIAS
+				+ " WHERE " + LOOKUP_ALIAS + "." + keyColumnName)
+		;
+	}
+
+	/**
+	 * Lookup of table direct column: identifier columns of table with name of column
+	 * @param columnName
+	 * @param language
+	 * @return
+	 */
+	private static LookupReference getTableDirLookupReference(String columnName, Language language) {
+		if(columnName == null || !columnName.endsWith("_ID")) {
+			return null;
+		}
+		String displayColumn = MLookupFactory.getLookup_TableDirEmbed(language, columnName, LOOKUP_ALIAS);
+		if(Util.isEmpty(displayColumn, true)) {
+			return null;
+		}
+		String tableName = columnName.substring(0, columnName.length() - 3);
+		return newInstance()
+			.withReferenceKey("TableDir_" + columnName)
+			.withQuery("SELECT " + LOOKUP_ALIAS + "." + columnName + ", (" + displayColumn + ")"
+				+ " FROM " + tableName + " " + LOOKUP_ALIAS
+				+ " WHERE " + LOOKUP_ALIAS + "." + columnName)
+		;
+	}
+
+	private static String getQuery(ColumnReference columnReference, String displayColumn) {
+		return "SELECT " + LOOKUP_ALIAS + "." + columnReference.getKeyColumn() + ", (" + displayColumn + ")"
+			+ " FROM " + columnReference.getTableName() + " " + LOOKUP_ALIAS
+			+ " WHERE " + LOOKUP_ALIAS + "." + columnReference.getKeyColumn();
+	}
+
+	@Override
+	public String toString() {
+		return "LookupReference [referenceKey=" + referenceKey + ", query=" + query + "]";
+	}
+}
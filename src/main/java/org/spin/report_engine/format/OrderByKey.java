@@ -0,0 +1,94 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.format;
+
+/**
+ * Order By key of a query, it is used as keyset for pagination.
+ * The alias is the label of the key column selected in query
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class OrderByKey {
+
+	/**	Prefix for alias of key columns selected	*/
+	public static final String ALIAS_PREFIX = "OrderByKey_";
+	private String expression;
+	private String alias;
+	private String orderByAlias;
+	private boolean isDescending;
+	private boolean isNullable;
+
+	private OrderByKey() {
+		isNullable = true;
+	}
+
+	public static OrderByKey newInstance() {
+		return new OrderByKey();
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	public OrderByKey withExpression(String expression) {
+		this.expression = expression;
+		return this;
+	}
+
+	public String getAlias() {
+		return alias;
+	}
+
+	public OrderByKey withAlias(String alias) {
+		this.alias = alias;
+		return this;
+	}
+
+	/**
+	 * Name used in ORDER BY clause (alias of select list)
+	 * @return
+	 */
+	public String getOrderByAlias() {
+		return orderByAlias;
+	}
+
+	public OrderByKey withOrderByAlias(String orderByAlias) {
+		this.orderByAlias = orderByAlias;
+		return this;
+	}
+
+	public boolean isDescending() {
+		return isDescending;
+	}
+
+	public OrderByKey withDescending(boolean isDescending) {
+		this.isDescending = isDescending;
+		return this;
+	}
+
+	public boolean isNullable() {
+		return isNullable;
+	}
+
+	public OrderByKey withNullable(boolean isNullable) {
+		this.isNullable = isNullable;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "OrderByKey [expression=" + expression + ", alias=" + alias + ", orderByAlias=" + orderByAlias + ", isDescending=" + isDescending
+				+ ", isNullable=" + isNullable + "]";
+	}
+}
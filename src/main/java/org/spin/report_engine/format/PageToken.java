@@ -0,0 +1,273 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import org.compiere.util.CLogger;
+import org.compiere.util.Util;
+
+/**
+ * Stateless page token: it has the offset of next page and the order by
+ * key values of last row sent, then the next page can be read with a keyset
+ * condition instead of skip all previous rows. The token does not depend
+ * of session, it can be resolved by any node.
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class PageToken {
+
+	/**	Prefix of token	*/
+	public static final String PREFIX = "keyset_";
+	/**	Version of serialization	*/
+	private static final int VERSION = 1;
+	/**	Value types	*/
+	private static final byte TYPE_INTEGER = 'I';
+	private static final byte TYPE_LONG = 'L';
+	private static final byte TYPE_DECIMAL = 'N';
+	private static final byte TYPE_TIMESTAMP = 'T';
+	private static final byte TYPE_STRING = 'S';
+
+	private int offset;
+	private int signature;
+	private List<Object> keyValues;
+
+	private static final CLogger logger = CLogger.getCLogger(PageToken.class);
+
+	private PageToken() {
+		keyValues = new ArrayList<Object>();
+	}
+
+	public static PageToken newInstance() {
+		return new PageToken();
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public PageToken withOffset(int offset) {
+		this.offset = offset;
+		return this;
+	}
+
+	public int getSignature() {
+		return signature;
+	}
+
+	public PageToken withSignature(int signature) {
+		this.signature = signature;
+		return this;
+	}
+
+	public List<Object> getKeyValues() {
+		return keyValues;
+	}
+
+	/**
+	 * Set key values of last row, values with null or without supported type are not
+	 * used as keyset, only the offset is kept
+	 * @param keyValues
+	 * @return
+	 */
+	public PageToken withKeyValues(List<Object> keyValues) {
+		this.keyValues = new ArrayList<Object>();
+		if(keyValues == null) {
+			return this;
+		}
+		List<Object> values = new ArrayList<Object>();
+		for (Object value : keyValues) {
+			Object validValue = getValidValue(value);
+			if(validValue == null) {
+				return this;
+			}
+			values.add(validValue);
+		}
+		this.keyValues = values;
+		return this;
+	}
+
+	/**
+	 * Page number for a page size
+	 * @param pageSize
+	 * @return
+	 */
+	public int getPageNumber(int pageSize) {
+		if(pageSize <= 0) {
+			return 1;
+		}
+		return (offset / pageSize) + 1;
+	}
+
+	/**
+	 * Validate if token can be used as keyset for order keys
+	 * @param orderByKeys
+	 * @return
+	 */
+	public boolean isKeyset(List<OrderByKey> orderByKeys) {
+		return orderByKeys != null
+				&& !orderByKeys.isEmpty()
+				&& keyValues.size() == orderByKeys.size()
+				&& signature == getSignature(orderByKeys);
+	}
+
+	/**
+	 * Signature of order keys, a token of other order is not applied as keyset
+	 * @param orderByKeys
+	 * @return
+	 */
+	public static int getSignature(List<OrderByKey> orderByKeys) {
+		int signature = 1;
+		for (OrderByKey key : orderByKeys) {
+			signature = 31 * signature + key.getExpression().hashCode();
+			signature = 31 * signature + (key.isDescending()? 1: 0);
+		}
+		return signature;
+	}
+
+	/**
+	 * Validate if a token is a keyset page token
+	 * @param token
+	 * @return
+	 */
+	public static boolean isPageToken(String token) {
+		return !Util.isEmpty(token, true) && token.startsWith(PREFIX);
+	}
+
+	/**
+	 * Get value supported for token or null
+	 * @param value
+	 * @return
+	 */
+	private static Object getValidValue(Object value) {
+		if(value == null) {
+			return null;
+		}
+		if(value instanceof Integer
+				|| value instanceof Long
+				|| value instanceof BigDecimal
+				|| value instanceof Timestamp
+				|| value instanceof String) {
+			return value;
+		}
+		if(value instanceof Short || value instanceof Byte) {
+			return Integer.valueOf(((Number) value).intValue());
+		}
+		if(value instanceof Number) {
+			return new BigDecimal(value.toString());
+		}
+		if(value instanceof Date) {
+			return new Timestamp(((Date) value).getTime());
+		}
+		return null;
+	}
+
+	/**
+	 * Encode token as string
+	 * @return
+	 */
+	public String encode() {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (DataOutputStream output = new DataOutputStream(buffer)) {
+			output.writeByte(VERSION);
+			output.writeInt(offset);
+			output.writeInt(signature);
+			output.writeShort(keyValues.size());
+			for (Object value : keyValues) {
+				if(value instanceof Integer) {
+					output.writeByte(TYPE_INTEGER);
+					output.writeInt((Integer) value);
+				} else if(value instanceof Long) {
+					output.writeByte(TYPE_LONG);
+					output.writeLong((Long) value);
+				} else if(value instanceof BigDecimal) {
+					output.writeByte(TYPE_DECIMAL);
+					output.writeUTF(((BigDecimal) value).toString());
+				} else if(value instanceof Timestamp) {
+					output.writeByte(TYPE_TIMESTAMP);
+					output.writeLong(((Timestamp) value).getTime());
+					output.writeInt(((Timestamp) value).getNanos());
+				} else {
+					output.writeByte(TYPE_STRING);
+					output.writeUTF((String) value);
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.toByteArray());
+	}
+
+	/**
+	 * Decode a page token, return null if it is not a valid token
+	 * @param token
+	 * @return
+	 */
+	public static PageToken decode(String token) {
+		if(!isPageToken(token)) {
+			return null;
+		}
+		try {
+			byte[] data = Base64.getUrlDecoder().decode(token.substring(PREFIX.length()));
+			try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(data))) {
+				if(input.readByte() != VERSION) {
+					return null;
+				}
+				PageToken pageToken = newInstance()
+					.withOffset(Math.max(input.readInt(), 0))
+					.withSignature(input.readInt())
+				;
+				int size = input.readShort();
+				List<Object> values = new ArrayList<Object>();
+				for (int index = 0; index < size; index++) {
+					byte type = input.readByte();
+					if(type == TYPE_INTEGER) {
+						values.add(input.readInt());
+					} else if(type == TYPE_LONG) {
+						values.add(input.readLong());
+					} else if(type == TYPE_DECIMAL) {
+						values.add(new BigDecimal(input.readUTF()));
+					} else if(type == TYPE_TIMESTAMP) {
+						Timestamp value = new Timestamp(input.readLong());
+						value.setNanos(input.readInt());
+						values.add(value);
+					} else if(type == TYPE_STRING) {
+						values.add(input.readUTF());
+					} else {
+						return null;
+					}
+				}
+				return pageToken.withKeyValues(values);
+			}
+		} catch (Exception e) {
+			logger.warning("Invalid page token: " + e.getLocalizedMessage());
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PageToken [offset=" + offset + ", signature=" + signature + ", keyValues=" + keyValues + "]";
+	}
+}
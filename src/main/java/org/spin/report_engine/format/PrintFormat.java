@@ -15,8 +15,12 @@
 package org.spin.report_engine.format;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.adempiere.core.domains.models.I_AD_PrintFormatItem;
@@ -31,6 +35,7 @@ import org.compiere.util.DisplayType;
 import org.compiere.util.Env;
 import org.compiere.util.Language;
 import org.compiere.util.Util;
+import org.spin.report_engine.data.SummaryFunction;
 
 /**
  * Print Format Representation
@@ -46,10 +51,13 @@ public class PrintFormat {
 	private int tableId;
 	private String tableName;
 	private boolean isSummary;
+	private int printPaperId;
 	private List<ReportView> reportViews;
 	private List<PrintFormatItem> items;
 	private List<PrintFormatColumn> columnsDefinition;
 	private int aliasNumber;
+	/**	Compiled queries by lookup mode, it is shared by copies of definition	*/
+	private Map<Boolean, QueryTemplate> queryTemplates;
 	
 	private PrintFormat(MPrintFormat printFormat) {
 		this.name = printFormat.getName();
@@ -63,6 +71,8 @@ public class PrintFormat {
 		MTable table = MTable.get(printFormat.getCtx(), tableId);
 		this.tableName = MTable.getTableName(printFormat.getCtx(), printFormat.getAD_Table_ID());
 		this.isSummary = printFormat.isSummary();
+		this.printPaperId = printFormat.getAD_PrintPaper_ID();
+		this.queryTemplates = new ConcurrentHashMap<Boolean, QueryTemplate>();
 
 		//	Get Views
 		this.reportViews = new ArrayList<ReportView>();
@@ -80,7 +90,7 @@ public class PrintFormat {
 			})
 		;
 
-		//	Get Items
+		//	Get Items in one query
 		this.items = new ArrayList<PrintFormatItem>();
 		new Query(
 			Env.getCtx(),
@@ -90,9 +100,8 @@ public class PrintFormat {
 		)
 			.setParameters(printFormatId)
 			.setOrderBy(I_AD_PrintFormatItem.COLUMNNAME_SeqNo)
-			.getIDsAsList()
-			.forEach(printFormatItemId -> {
-				MPrintFormatItem printFormatItem = new MPrintFormatItem(Env.getCtx(), printFormatItemId, null);
+			.<MPrintFormatItem>list()
+			.forEach(printFormatItem -> {
 				this.items.add(PrintFormatItem.newInstance(printFormatItem));
 			})
 		;
@@ -114,10 +123,41 @@ public class PrintFormat {
 		;
 	}
 	
+	/**
+	 * Copy of definition, the items are copied and the other definitions are shared
+	 * @param printFormat
+	 */
+	private PrintFormat(PrintFormat printFormat) {
+		this.name = printFormat.name;
+		this.description = printFormat.description;
+		this.printFormatId = printFormat.printFormatId;
+		this.reportViewId = printFormat.reportViewId;
+		this.reportView = printFormat.reportView;
+		this.tableId = printFormat.tableId;
+		this.tableName = printFormat.tableName;
+		this.isSummary = printFormat.isSummary;
+		this.printPaperId = printFormat.printPaperId;
+		this.reportViews = printFormat.reportViews;
+		this.items = printFormat.items.stream()
+			.map(PrintFormatItem::copy)
+			.collect(Collectors.toList())
+		;
+		this.columnsDefinition = printFormat.columnsDefinition;
+		this.queryTemplates = printFormat.queryTemplates;
+	}
+	
 	public static PrintFormat newInstance(MPrintFormat printFormat) {
 		return new PrintFormat(printFormat);
 	}
 
+	/**
+	 * Copy of print format, it can be changed without change the cached definition
+	 * @return
+	 */
+	public PrintFormat copy() {
+		return new PrintFormat(this);
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -137,8 +177,12 @@ public class PrintFormat {
 	public PrintFormat setReportViewId(int newReportViewId) {
 		this.reportViewId = newReportViewId;
 		if(reportViewId > 0) {
-			MReportView reportView = new MReportView(Env.getCtx(), reportViewId, null);
-			this.reportView = ReportView.newInstance(reportView);
+			//	Views of table are already loaded
+			this.reportView = reportViews.stream()
+				.filter(view -> view.getReportViewId() == reportViewId)
+				.findFirst()
+				.orElseGet(() -> ReportView.newInstance(new MReportView(Env.getCtx(), reportViewId, null)))
+			;
 		} else {
 			this.reportView = null;
 		}
@@ -164,6 +208,10 @@ public class PrintFormat {
 		return isSummary;
 	}
 
+	public int getPrintPaperId() {
+		return printPaperId;
+	}
+
 	public List<ReportView> getReportViews() {
 		return reportViews;
 	}
@@ -180,21 +228,57 @@ public class PrintFormat {
 		return items.stream().filter(item -> item.isGroupBy()).collect(Collectors.toList());
 	}
 	
+	/**
+	 * Get items for sort, the group items are first then the rows of a group are together
+	 * @return
+	 */
 	public List<PrintFormatItem> getSortingItems() {
-		return items.stream().filter(item -> item.isGroupBy() || item.isOrderBy()).sorted(Comparator.comparing(PrintFormatItem::getSortSequence)).collect(Collectors.toList());
+		return items.stream()
+			.filter(item -> item.isGroupBy() || item.isOrderBy())
+			.sorted(
+				Comparator.comparing((PrintFormatItem item) -> !item.isGroupBy())
+					.thenComparing(PrintFormatItem::getSortSequence)
+			)
+			.collect(Collectors.toList())
+		;
 	}
 	
 	public List<PrintFormatColumn> getColumnsDefinition() {
 		return columnsDefinition;
 	}
 
+	/**
+	 * Get query definition from compiled template, the template is built once by definition
+	 * @return
+	 */
 	public QueryDefinition getQuery() {
+		return getQuery(false);
+	}
+
+	/**
+	 * Get query definition from compiled template, the template is built once by definition and mode
+	 * @param isDeferredLookup the display values of references are not part of query, it are resolved after read rows
+	 * @return
+	 */
+	public QueryDefinition getQuery(boolean isDeferredLookup) {
+		return queryTemplates.computeIfAbsent(isDeferredLookup, key -> QueryTemplate.newInstance(buildQueryDefinition(key)))
+			.newQueryDefinition();
+	}
+
+	private QueryDefinition buildQueryDefinition(boolean isDeferredLookup) {
 		clearTableAlias();
 		StringBuffer query = new StringBuffer();
 		StringBuffer orderBy = new StringBuffer();
 		StringBuffer tableReferences = new StringBuffer();
+		List<TableJoin> joins = new ArrayList<TableJoin>();
 		Language language = Language.getLoginLanguage();
 		List<PrintFormatColumn> columns = new ArrayList<PrintFormatColumn>();
+		List<OrderByKey> orderByKeys = new ArrayList<OrderByKey>();
+		Map<Integer, List<OrderByKey>> itemOrderByKeys = new HashMap<Integer, List<OrderByKey>>();
+		//	Display column of items in query, it is null for items without display column
+		Map<Integer, String> queryItems = new HashMap<Integer, String>();
+		//	Lookups resolved after read rows
+		Map<Integer, LookupReference> lookups = new HashMap<Integer, LookupReference>();
 		getItems().stream()
 		.filter(item -> item.isActive() && item.isPrinted())
 		.sorted(Comparator.comparing(PrintFormatItem::getSequence))
@@ -202,6 +286,8 @@ public class PrintFormat {
 			if(item.getColumnId() > 0) {
 				String columnName = null;
 				String alias = null;
+				String expression = null;
+				boolean isNullable = true;
 				if(query.length() > 0) {
 					query.append(", ");
 				}
@@ -210,15 +296,28 @@ public class PrintFormat {
 					query.append(columnName);
 					query.append(" AS ").append(item.getColumnName());
 					alias = item.getColumnName();
+					expression = columnName;
 					columns.add(PrintFormatColumn.newInstance(item).withColumnNameAlias(item.getColumnName()));
 				} else {
 					columnName = getQueryColumnName(item.getColumnName());
 					query.append(columnName);
 					alias = columnName;
+					expression = columnName;
+					isNullable = !item.isMandatory();
 					columns.add(PrintFormatColumn.newInstance(item).withColumnNameAlias(columnName));
 				}
+				String valueAlias = alias;
+				String valueExpression = expression;
+				boolean isValueNullable = isNullable;
+				//	Sorted and grouped items need display value in query
+				LookupReference lookup = null;
+				if(isDeferredLookup && !item.isOrderBy() && !item.isGroupBy()) {
+					lookup = LookupReference.getLookupReference(item, language);
+				}
 				//	Process Display Value
-				if(item.getReferenceId() == DisplayType.TableDir
+				if(lookup != null) {
+					lookups.put(item.getPrintFormatItemId(), lookup);
+				} else if(item.getReferenceId() == DisplayType.TableDir
 						|| (item.getReferenceId() == DisplayType.Search && item.getReferenceValueId() == 0)) {
 					if(query.length() > 0) {
 						query.append(", ");
@@ -230,6 +329,8 @@ public class PrintFormat {
 					}
 					query.append("(").append(columnName).append(")");
 					alias = getDisplayColumnName(item);
+					expression = "(" + columnName + ")";
+					isNullable = true;
 					query.append(" AS ").append(alias);
 					columns.add(PrintFormatColumn.newInstance(item).withDisplayValue(true).withColumnNameAlias(getDisplayColumnName(item)));
 				} else if(item.getReferenceId() == DisplayType.Table
@@ -250,9 +351,12 @@ public class PrintFormat {
 					columnName = displayColumnValue.toString();
 					query.append("(").append(displayColumnValue).append(")");
 					alias = getDisplayColumnName(item);
+					expression = "(" + columnName + ")";
+					isNullable = true;
 					query.append(" AS ").append(alias);
 					columns.add(PrintFormatColumn.newInstance(item).withDisplayValue(true).withColumnNameAlias(getDisplayColumnName(item)));
 					//	Add JOIN
+					int joinStart = tableReferences.length();
 					if(item.isMandatory()) {
 						tableReferences.append(" INNER JOIN ");
 					} else {
@@ -260,12 +364,15 @@ public class PrintFormat {
 					}
 					tableReferences.append(columnReference.getTableName()).append(" ").append(getTableAlias()).append(" ON (")
 					.append(getQueryReferenceColumnName(columnReference.getKeyColumn())).append("=").append(getQueryColumnName(item.getColumnName())).append(")");
+					addJoin(joins, tableReferences, joinStart, getTableAlias(), item.isMandatory());
 					if(columnReference.isIsTranslated()) {
+						joinStart = tableReferences.length();
 						tableReferences.append(" LEFT OUTER JOIN ")
 						.append(columnReference.getTableName()).append("_Trl").append(" ").append(getTableAliasTrl()).append(" ON (")
 						.append(getQueryReferenceColumnNameTrl(columnReference.getKeyColumn())).append(" = ").append(getQueryColumnName(item.getColumnName()))
-						//	Reference ID
+						//	Language
 						.append(getLanguageCriteria(language)).append(")");
+						addJoin(joins, tableReferences, joinStart, getTableAliasTrl(), false, getLanguageParameters(language));
 					}
 				} else if(item.getReferenceId() == DisplayType.List 
 						|| (item.getReferenceId() == DisplayType.Button && item.getReferenceValueId() != 0)) {
@@ -289,9 +396,12 @@ public class PrintFormat {
 					columnName = displayColumnValue.toString();
 					query.append("(").append(displayColumnValue).append(")");
 					alias = getDisplayColumnName(item);
+					expression = "(" + columnName + ")";
+					isNullable = true;
 					query.append(" AS ").append(alias);
 					columns.add(PrintFormatColumn.newInstance(item).withDisplayValue(true).withColumnNameAlias(getDisplayColumnName(item)));
 					//	Add JOIN
+					int joinStart = tableReferences.length();
 					if(item.isMandatory()) {
 						tableReferences.append(" INNER JOIN ");
 					} else {
@@ -300,13 +410,16 @@ public class PrintFormat {
 					tableReferences.append(columnReference.getTableName()).append(" ").append(getTableAlias()).append(" ON (")
 					.append(getQueryColumnName(item.getColumnName())).append(" = ").append(getTableAlias()).append(".").append(columnReference.getKeyColumn())
 					//	Reference ID
-					.append(" AND ").append(getTableAlias()).append(".").append("AD_Reference_ID").append(" = ").append(item.getReferenceValueId()).append(")");
+					.append(" AND ").append(getTableAlias()).append(".").append("AD_Reference_ID").append(" = ?").append(")");
+					addJoin(joins, tableReferences, joinStart, getTableAlias(), item.isMandatory(), item.getReferenceValueId());
 					if(columnReference.isIsTranslated()) {
+						joinStart = tableReferences.length();
 						tableReferences.append(" LEFT OUTER JOIN ")
 						.append(columnReference.getTableName()).append("_Trl").append(" ").append(getTableAliasTrl()).append(" ON (")
 						.append(getQueryReferenceColumnNameTrl("AD_Ref_List_ID")).append(" = ").append(getQueryReferenceColumnName("AD_Ref_List_ID"))
-						//	Reference ID
+						//	Language
 						.append(getLanguageCriteria(language)).append(")");
+						addJoin(joins, tableReferences, joinStart, getTableAliasTrl(), false, getLanguageParameters(language));
 					}
 				} else if (item.getReferenceId() == DisplayType.Location
 						|| item.getReferenceId() == DisplayType.Account
@@ -330,9 +443,12 @@ public class PrintFormat {
 						columnName = displayColumnValue.toString();
 						query.append("(").append(displayColumnValue).append(")");
 						alias = getDisplayColumnName(item);
+						expression = "(" + columnName + ")";
+						isNullable = true;
 						query.append(" AS ").append(alias);
 						columns.add(PrintFormatColumn.newInstance(item).withDisplayValue(true).withColumnNameAlias(getDisplayColumnName(item)));
 						//	Add JOIN
+						int joinStart = tableReferences.length();
 						if(item.isMandatory()) {
 							tableReferences.append(" INNER JOIN ");
 						} else {
@@ -340,6 +456,7 @@ public class PrintFormat {
 						}
 						tableReferences.append(columnReference.getTableName()).append(" ").append(getTableAlias()).append(" ON (")
 						.append(getQueryReferenceColumnName(columnReference.getKeyColumn())).append("=").append(getQueryColumnName(item.getColumnName())).append(")");
+						addJoin(joins, tableReferences, joinStart, getTableAlias(), item.isMandatory());
 					}
 				} else if(item.getColumnName().equals("Record_ID")) {
 					addTableAlias();
@@ -351,24 +468,57 @@ public class PrintFormat {
 					query.append(" AS ").append("TableName");
 					columns.add(PrintFormatColumn.newInstance(item).withColumnName("TableName").withColumnNameAlias(columnName));
 					//	Add JOIN
+					int joinStart = tableReferences.length();
 					tableReferences.append(" LEFT OUTER JOIN ");
 					tableReferences.append("AD_Table").append(" ").append(getTableAlias()).append(" ON (")
 					.append(getQueryReferenceColumnName("AD_Table_ID")).append("=").append(getQueryColumnName("AD_Table_ID")).append(")");
+					addJoin(joins, tableReferences, joinStart, getTableAlias(), false);
 				}
-				//	For Order By
-				if(item.isOrderBy()) {
+				//	For Order By, the group items are also sorted by value then rows of a group are together
+				if(item.isOrderBy() || item.isGroupBy()) {
 					if(!Util.isEmpty(alias)) {
-						if(orderBy.length() > 0) {
-							orderBy.append(", ");
-						}
-						orderBy.append(alias);
-						if(item.isDesc()) {
-							orderBy.append(" DESC");
+						List<OrderByKey> keys = new ArrayList<OrderByKey>();
+						keys.add(
+							OrderByKey.newInstance()
+								.withOrderByAlias(alias)
+								.withExpression(expression)
+								.withDescending(item.isDesc())
+								.withNullable(isNullable)
+						);
+						if(item.isGroupBy() && !alias.equals(valueAlias)) {
+							keys.add(
+								OrderByKey.newInstance()
+									.withOrderByAlias(valueAlias)
+									.withExpression(valueExpression)
+									.withDescending(item.isDesc())
+									.withNullable(isValueNullable)
+							);
 						}
+						itemOrderByKeys.put(item.getPrintFormatItemId(), keys);
 					}
 				}
+				queryItems.put(item.getPrintFormatItemId(), alias.equals(valueAlias)? null: alias);
 			}
 		});
+		//	Order By: group items then order items
+		getSortingItems().forEach(item -> {
+			List<OrderByKey> keys = itemOrderByKeys.get(item.getPrintFormatItemId());
+			if(keys == null) {
+				return;
+			}
+			keys.forEach(key -> {
+				if(orderBy.length() > 0) {
+					orderBy.append(", ");
+				}
+				orderBy.append(key.getOrderByAlias());
+				if(key.isDescending()) {
+					orderBy.append(" DESC");
+				}
+				orderByKeys.add(key);
+			});
+		});
+		boolean isOrderedByGroups = !getGroupItems().isEmpty()
+			&& getGroupItems().stream().allMatch(item -> itemOrderByKeys.containsKey(item.getPrintFormatItemId()));
 		if(getTableName().equals("T_Report")) {
 			//	Level No
 			if(query.length() > 0) {
@@ -382,6 +532,32 @@ public class PrintFormat {
 			}
 			query.append("(").append("T_Report.SeqNo").append(")");
 			query.append(" AS ").append("SeqNo");
+			//	Financial report is not paginated by keyset
+			orderByKeys.clear();
+		} else {
+			//	Primary key as tiebreaker for keyset pagination
+			String[] keyColumns = MTable.get(Env.getCtx(), getTableId()).getKeyColumns();
+			if(keyColumns != null
+					&& keyColumns.length == 1
+					&& query.length() > 0) {
+				String keyColumnName = getQueryColumnName(keyColumns[0]);
+				if(orderBy.length() > 0) {
+					orderBy.append(", ");
+				}
+				orderBy.append(keyColumnName);
+				orderByKeys.add(
+					OrderByKey.newInstance()
+						.withExpression(keyColumnName)
+						.withNullable(false)
+				);
+				//	Select keys for read values of last row
+				for (int keyIndex = 0; keyIndex < orderByKeys.size(); keyIndex++) {
+					OrderByKey key = orderByKeys.get(keyIndex).withAlias(OrderByKey.ALIAS_PREFIX + (keyIndex + 1));
+					query.append(", ").append(key.getExpression()).append(" AS ").append(key.getAlias());
+				}
+			} else {
+				orderByKeys.clear();
+			}
 		}
 		if(query.length() > 0) {
 			query.insert(0, "SELECT ");
@@ -394,10 +570,65 @@ public class PrintFormat {
 		return QueryDefinition.newInstance()
 				.withQuery(query.toString())
 				.withOrderBy(orderBy.toString())
+				.withOrderByKeys(orderByKeys)
+				.withOrderedByGroups(isOrderedByGroups && !getTableName().equals("T_Report"))
+				.withSummaryQuery(!getTableName().equals("T_Report")? getSummaryQuery(queryItems, isOrderedByGroups): null)
+				.withJoins(joins)
+				.withLookups(lookups)
 				.withColumns(getColumnsDefinition())
 				.withQueryColumns(columns);
 	}
 	
+	/**
+	 * Keep join added to table references, it is used for build count query
+	 * @param joins
+	 * @param tableReferences
+	 * @param joinStart
+	 * @param alias
+	 * @param isInner
+	 * @param parameters values of bind parameters in join clause
+	 */
+	private void addJoin(List<TableJoin> joins, StringBuffer tableReferences, int joinStart, String alias, boolean isInner, Object... parameters) {
+		joins.add(
+			TableJoin.newInstance()
+				.withAlias(alias)
+				.withInner(isInner)
+				.withClause(tableReferences.substring(joinStart))
+				.withParameters(Arrays.asList(parameters))
+		);
+	}
+	
+	/**
+	 * Get aggregate query when all summarized items are numeric columns of query,
+	 * the rows of groups are summarized only when query is sorted by groups else
+	 * only the grand total is summarized
+	 * @param queryItems items of query with display column
+	 * @param isOrderedByGroups
+	 * @return
+	 */
+	private SummaryQuery getSummaryQuery(Map<Integer, String> queryItems, boolean isOrderedByGroups) {
+		List<PrintFormatItem> summarizedItems = getItems().stream()
+			.filter(item -> SummaryFunction.getFunctions(item) != 0)
+			.collect(Collectors.toList())
+		;
+		boolean isSupported = summarizedItems.stream()
+			.allMatch(item -> queryItems.containsKey(item.getPrintFormatItemId()) && SummaryQuery.isSupported(item));
+		if(!isSupported
+				|| (!isOrderedByGroups && summarizedItems.isEmpty())) {
+			return null;
+		}
+		SummaryQuery summaryQuery = SummaryQuery.newInstance();
+		if(!isOrderedByGroups) {
+			summarizedItems.forEach(summaryQuery::withSummarizedItem);
+			return summaryQuery;
+		}
+		getGroupItems().stream()
+			.sorted(Comparator.comparing(PrintFormatItem::getSortSequence))
+			.forEach(item -> summaryQuery.withGroupItem(item, queryItems.get(item.getPrintFormatItemId())));
+		summarizedItems.forEach(summaryQuery::withSummarizedItem);
+		return summaryQuery;
+	}
+	
 	private String getQueryColumnName(String columnName) {
 		return getTableName() + "." + columnName;
 	}
@@ -410,13 +641,26 @@ public class PrintFormat {
 		return getTableAliasTrl() + "." + columnName;
 	}
 	
+	/**
+	 * Language condition of translation join, the language is a bind parameter
+	 * then the query is the same for all languages
+	 * @param language
+	 * @return
+	 */
 	private String getLanguageCriteria(Language language) {
 		if(!Env.isBaseLanguage(language, "AD_Ref_List")) {
-			return " AND " + getTableAliasTrl() + ".AD_Language = '" + language.getAD_Language() + "'";
+			return " AND " + getTableAliasTrl() + ".AD_Language = ?";
 		}
 		return "";
 	}
 	
+	private Object[] getLanguageParameters(Language language) {
+		if(!Env.isBaseLanguage(language, "AD_Ref_List")) {
+			return new Object[] {language.getAD_Language()};
+		}
+		return new Object[0];
+	}
+	
 	private String getTableAlias() {
 		return "t" + aliasNumber;
 	}
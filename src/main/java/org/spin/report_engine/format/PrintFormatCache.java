@@ -0,0 +1,140 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.format;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.compiere.print.MPrintFormat;
+import org.compiere.util.CLogger;
+import org.compiere.util.Env;
+import org.spin.report_engine.util.CursorUtil;
+
+/**
+ * Cache of print format definitions by print format and language. A definition is
+ * valid while the last updated and count of print format and items are the same,
+ * it is validated with one query for each request. A copy is returned on each get,
+ * then the cached definition is never changed by a report
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class PrintFormatCache {
+
+	/**	Default instance	*/
+	private static final PrintFormatCache instance = new PrintFormatCache();
+	/**	Definitions by print format and language	*/
+	private final Map<String, CachedPrintFormat> printFormats;
+	/**	Version of print format and items	*/
+	private static final String VERSION_QUERY = "SELECT MAX(Updated), COUNT(*) FROM ("
+			+ "SELECT Updated FROM AD_PrintFormat WHERE AD_PrintFormat_ID = ? "
+			+ "UNION ALL "
+			+ "SELECT Updated FROM AD_PrintFormatItem WHERE AD_PrintFormat_ID = ?"
+			+ ") PrintFormatVersion";
+
+	private static final CLogger logger = CLogger.getCLogger(PrintFormatCache.class);
+
+	private PrintFormatCache() {
+		printFormats = new ConcurrentHashMap<String, CachedPrintFormat>();
+	}
+
+	/**
+	 * Get current instance
+	 * @return
+	 */
+	public static PrintFormatCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Get copy of print format definition for language of context
+	 * @param printFormatId
+	 * @return print format or null if it is not found
+	 */
+	public PrintFormat get(int printFormatId) {
+		Object[] version = getVersion(printFormatId);
+		if(version == null) {
+			return null;
+		}
+		String key = printFormatId + "|" + Env.getAD_Language(Env.getCtx());
+		CachedPrintFormat cachedPrintFormat = printFormats.get(key);
+		if(cachedPrintFormat == null
+				|| !Arrays.equals(cachedPrintFormat.version, version)) {
+			MPrintFormat printFormat = MPrintFormat.get(Env.getCtx(), printFormatId, cachedPrintFormat != null);
+			if(printFormat == null || printFormat.getAD_PrintFormat_ID() <= 0) {
+				return null;
+			}
+			cachedPrintFormat = new CachedPrintFormat(version, PrintFormat.newInstance(printFormat));
+			printFormats.put(key, cachedPrintFormat);
+			logger.fine("Print Format loaded: " + key);
+		}
+		return cachedPrintFormat.printFormat.copy();
+	}
+
+	/**
+	 * Remove all definitions
+	 * @return count of definitions removed
+	 */
+	public int reset() {
+		int size = printFormats.size();
+		printFormats.clear();
+		return size;
+	}
+
+	/**
+	 * Remove definitions of a print format for all languages
+	 * @param printFormatId
+	 * @return count of definitions removed
+	 */
+	public int reset(int printFormatId) {
+		String prefix = printFormatId + "|";
+		int size = printFormats.size();
+		printFormats.keySet().removeIf(key -> key.startsWith(prefix));
+		return size - printFormats.size();
+	}
+
+	/**
+	 * Last updated and count of print format and items, null if print format does not exist
+	 * @param printFormatId
+	 * @return
+	 */
+	private Object[] getVersion(int printFormatId) {
+		Object[] version = new Object[2];
+		CursorUtil.runCursor(null, VERSION_QUERY, Arrays.<Object>asList(printFormatId, printFormatId), resultSet -> {
+			if(resultSet.next()) {
+				Timestamp updated = resultSet.getTimestamp(1);
+				version[0] = updated;
+				version[1] = resultSet.getInt(2);
+			}
+		});
+		if(version[0] == null) {
+			return null;
+		}
+		return version;
+	}
+
+	/**
+	 * Definition with version
+	 */
+	private static class CachedPrintFormat {
+		private final Object[] version;
+		private final PrintFormat printFormat;
+
+		private CachedPrintFormat(Object[] version, PrintFormat printFormat) {
+			this.version = version;
+			this.printFormat = printFormat;
+		}
+	}
+}
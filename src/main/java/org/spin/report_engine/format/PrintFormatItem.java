@@ -15,6 +15,7 @@
 package org.spin.report_engine.format;
 
 import org.adempiere.core.domains.models.I_AD_PrintFormatItem;
+import org.adempiere.exceptions.AdempiereException;
 import org.compiere.model.MColumn;
 import org.compiere.print.MPrintColor;
 import org.compiere.print.MPrintFont;
@@ -27,7 +28,7 @@ import org.compiere.util.Util;
  * Print Format Line Representation
  * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
  */
-public class PrintFormatItem {
+public class PrintFormatItem implements Cloneable {
 	
 	private int printFormatItemId;
 	private int printFormatChildId;
@@ -213,6 +214,18 @@ public class PrintFormatItem {
 		return new PrintFormatItem(printFormatItem);
 	}
 
+	/**
+	 * Copy of item, a cached item is not changed by report
+	 * @return
+	 */
+	public PrintFormatItem copy() {
+		try {
+			return (PrintFormatItem) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AdempiereException(e);
+		}
+	}
+
 	public String getMappingClassName() {
 		return mappingClassName;
 	}
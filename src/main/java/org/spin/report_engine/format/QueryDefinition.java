@@ -16,13 +16,16 @@ package org.spin.report_engine.format;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.compiere.model.MRole;
 import org.compiere.util.DisplayType;
 import org.compiere.util.Env;
 import org.compiere.util.Util;
+import org.spin.report_engine.format.dialect.QueryDialect;
 import org.spin.service.grpc.util.db.OperatorUtil;
 import org.spin.service.grpc.util.db.ParameterUtil;
 import org.spin.service.grpc.util.query.Filter;
@@ -38,23 +41,42 @@ public class QueryDefinition {
 	private String orderBy;
 	private List<Filter> conditions;
 	private List<Object> parameters;
+	private List<Object> completeQueryParameters;
+	private List<Object> countQueryParameters;
+	private List<Object> summaryQueryParameters;
+	private List<OrderByKey> orderByKeys;
+	private PageToken pageToken;
+	private boolean isKeyset;
+	private boolean isOrderedByGroups;
+	private List<TableJoin> joins;
+	private Map<Integer, LookupReference> lookups;
 	private List<PrintFormatColumn> columns;
 	private List<PrintFormatColumn> queryColumns;
 	private String whereClause;
 	private String dynamicWhereClause; // dynamic where by filters
 	private String completeQuery;
 	private String completeQueryCount;
+	private SummaryQuery summaryQuery;
+	private String completeSummaryQuery;
 	private int limit;
 	private int offset;
 	private int instanceId;
 	public static final int NO_LIMIT = -1;
 	private String tableName;
+	/**	Compiled template of print format	*/
+	private QueryTemplate template;
 	
 	private QueryDefinition() {
 		conditions = new ArrayList<Filter>();
+		joins = new ArrayList<TableJoin>();
+		lookups = new HashMap<Integer, LookupReference>();
 		columns = new ArrayList<PrintFormatColumn>();
 		queryColumns = new ArrayList<PrintFormatColumn>();
 		parameters = new ArrayList<Object>();
+		completeQueryParameters = new ArrayList<Object>();
+		countQueryParameters = new ArrayList<Object>();
+		summaryQueryParameters = new ArrayList<Object>();
+		orderByKeys = new ArrayList<OrderByKey>();
 	}
 	
 	public static QueryDefinition newInstance() {
@@ -78,6 +100,19 @@ public class QueryDefinition {
 		return orderBy;
 	}
 
+	/**
+	 * Compiled template of print format, it is null for a query without template
+	 * @return
+	 */
+	public QueryTemplate getTemplate() {
+		return template;
+	}
+
+	public QueryDefinition withTemplate(QueryTemplate template) {
+		this.template = template;
+		return this;
+	}
+
 	public QueryDefinition withQuery(String query) {
 		this.query = query;
 		return this;
@@ -97,6 +132,79 @@ public class QueryDefinition {
 		return this;
 	}
 
+	public List<OrderByKey> getOrderByKeys() {
+		return orderByKeys;
+	}
+
+	public QueryDefinition withOrderByKeys(List<OrderByKey> orderByKeys) {
+		this.orderByKeys = orderByKeys;
+		return this;
+	}
+
+	/**
+	 * Rows are sorted first by group items, the rows of a group are returned together
+	 * @return
+	 */
+	public boolean isOrderedByGroups() {
+		return isOrderedByGroups;
+	}
+
+	public QueryDefinition withOrderedByGroups(boolean isOrderedByGroups) {
+		this.isOrderedByGroups = isOrderedByGroups;
+		return this;
+	}
+
+	/**
+	 * Aggregate query for summary by groups, it is null when summary can not be calculated by database
+	 * @return
+	 */
+	public SummaryQuery getSummaryQuery() {
+		return summaryQuery;
+	}
+
+	public QueryDefinition withSummaryQuery(SummaryQuery summaryQuery) {
+		this.summaryQuery = summaryQuery;
+		return this;
+	}
+
+	/**
+	 * Aggregate query with conditions, it use same parameters of query
+	 * @return
+	 */
+	public String getCompleteSummaryQuery() {
+		return completeSummaryQuery;
+	}
+
+	public PageToken getPageToken() {
+		return pageToken;
+	}
+
+	/**
+	 * Page token of previous page, if it has key values of last row then the query is filtered by keyset
+	 * @param pageToken
+	 * @return
+	 */
+	public QueryDefinition withPageToken(PageToken pageToken) {
+		this.pageToken = pageToken;
+		return this;
+	}
+
+	/**
+	 * Query use keyset condition instead of offset
+	 * @return
+	 */
+	public boolean isKeyset() {
+		return isKeyset;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
 	public String getGroupBy() {
 		return groupBy;
 	}
@@ -121,6 +229,32 @@ public class QueryDefinition {
 		return this;
 	}
 
+	/**
+	 * Joins of reference tables in query
+	 * @return
+	 */
+	public List<TableJoin> getJoins() {
+		return joins;
+	}
+
+	public QueryDefinition withJoins(List<TableJoin> joins) {
+		this.joins = joins;
+		return this;
+	}
+
+	/**
+	 * Lookups of items resolved after read rows, by print format item
+	 * @return
+	 */
+	public Map<Integer, LookupReference> getLookups() {
+		return lookups;
+	}
+
+	public QueryDefinition withLookups(Map<Integer, LookupReference> lookups) {
+		this.lookups = lookups;
+		return this;
+	}
+
 	public List<PrintFormatColumn> getColumns() {
 		return columns;
 	}
@@ -143,6 +277,30 @@ public class QueryDefinition {
 		return parameters;
 	}
 
+	/**
+	 * Parameters of complete query: join parameters, filter parameters, keyset parameters and limit
+	 * @return
+	 */
+	public List<Object> getCompleteQueryParameters() {
+		return completeQueryParameters;
+	}
+
+	/**
+	 * Parameters of count query: parameters of joins in count and filter parameters
+	 * @return
+	 */
+	public List<Object> getCountQueryParameters() {
+		return countQueryParameters;
+	}
+
+	/**
+	 * Parameters of summary query: join parameters and filter parameters
+	 * @return
+	 */
+	public List<Object> getSummaryQueryParameters() {
+		return summaryQueryParameters;
+	}
+
 	public String getWhereClause() {
 		return this.whereClause;
 	}
@@ -180,8 +338,6 @@ public class QueryDefinition {
 	}
 
 	public QueryDefinition buildQuery() {
-		// Add Query columns
-		String query = getQuery();
 		// Add Where restriction
 		// TODO: Add 1=1 to remove `if (whereClause.length() > 0)` and change stream with parallelStream
 		StringBuffer whereClause = new StringBuffer();
@@ -193,73 +349,85 @@ public class QueryDefinition {
 		getConditions().stream()
 			.filter(condition -> !Util.isEmpty(condition.getColumnName(), true))
 			.forEach(condition -> {
-				Optional<PrintFormatColumn> maybeColumn = getColumns()
-					.stream()
-					.filter(column -> {
-						final String conditionColumnName = condition.getColumnName();
-						return conditionColumnName.equals(column.getColumnName())
-							|| conditionColumnName.equals(column.getColumnName() + "_To");
-					})
-					.sorted(Comparator.comparing(PrintFormatColumn::getColumnNameAlias).reversed())
-					.findFirst()
-				;
-				if(maybeColumn.isPresent()) {
+				PrintFormatColumn column = getConditionColumn(condition.getColumnName());
+				if(column != null) {
 					if (whereClause.length() > 0) {
 						whereClause.append(" AND ");
 					}
-					PrintFormatColumn column = maybeColumn.get();
 					condition.setColumnName(column.getColumnNameAlias());
 					String restriction = getRestrictionByOperator(condition, column.getReferenceId());
 					whereClause.append(restriction);
 				}
 		});
 		withDynamicWhereClause(whereClause.toString());
-		if(!Util.isEmpty(this.getDynamicWhereClause(), true)) {
-			query = query + " WHERE " + this.getDynamicWhereClause();
+		//	Keyset condition, it is not part of count
+		QueryDialect dialect = QueryDialect.getInstance();
+		List<Object> joinParameters = new ArrayList<Object>();
+		getJoins().forEach(join -> joinParameters.addAll(join.getParameters()));
+		completeQueryParameters = new ArrayList<Object>(joinParameters);
+		completeQueryParameters.addAll(getParameters());
+		summaryQueryParameters = new ArrayList<Object>(completeQueryParameters);
+		isKeyset = this.limit != NO_LIMIT
+				&& pageToken != null
+				&& Util.isEmpty(getGroupBy(), true)
+				&& pageToken.isKeyset(getOrderByKeys());
+		String keysetCondition = null;
+		if(isKeyset) {
+			keysetCondition = dialect.getKeysetCondition(getOrderByKeys(), pageToken.getKeyValues(), completeQueryParameters);
+		}
+		//	Queries with same shape only change parameters
+		QueryTemplate.CompiledQuery compiledQuery = null;
+		String shape = null;
+		if(template != null) {
+			shape = template.getShape(getTableName(), getDynamicWhereClause(), keysetCondition, getGroupBy());
+			compiledQuery = template.getCompiledQuery(shape);
+		}
+		if(compiledQuery == null) {
+			compiledQuery = compileQuery(keysetCondition);
+			if(template != null) {
+				template.putCompiledQuery(shape, compiledQuery);
+			}
 		}
-		//	Add SQL Access
+		countQueryParameters = new ArrayList<Object>(compiledQuery.getCountJoinParameters());
+		countQueryParameters.addAll(getParameters());
+		//	Access is applied for each request, then changes of role access are used
+		String query = compiledQuery.getQuery();
+		String queryWithKeyset = compiledQuery.getQueryWithKeyset();
+		String countQuery = compiledQuery.getCountQuery();
 		if(!tableName.equals("T_Report")) {
-			query = MRole.getDefault(Env.getCtx(), false).addAccessSQL(
+			MRole role = MRole.getDefault(Env.getCtx(), false);
+			query = role.addAccessSQL(
 					query, getTableName(), MRole.SQL_FULLYQUALIFIED, MRole.SQL_RO);
+			queryWithKeyset = role.addAccessSQL(
+					queryWithKeyset, getTableName(), MRole.SQL_FULLYQUALIFIED, MRole.SQL_RO);
+			countQuery = role.addAccessSQL(
+					countQuery, getTableName(), MRole.SQL_FULLYQUALIFIED, MRole.SQL_RO);
 		}
-		StringBuffer completeQuery = new StringBuffer(query);
-		StringBuffer completeQueryWithoutLimit = new StringBuffer(query);
-		//	Add Limit records
-		if(this.limit != NO_LIMIT) {
-			if(this.limit == 0) {
-				withLimit(100, 0);
-			}
-
-			StringBuffer limitClause = new StringBuffer()
-				// TODO: Implement with use https://github.com/adempiere/adempiere/pull/4142
-				// .append(" LIMIT ")
-				// .append(this.limit)
-				// .append(" OFFSET ")
-				// .append(this.offset)
-				// .append(completeQueryCount)
-			;
-
-			if(!Util.isEmpty(this.getDynamicWhereClause(), true)) {
-				limitClause.insert(0, " AND ");
-			} else {
-				limitClause.insert(0, " WHERE ");
-			}
-			limitClause.append("ROWNUM <= ").append(this.limit);
-			limitClause.append(" AND ROWNUM >= ").append(this.offset);
-
-			completeQuery.append(limitClause.toString());
+		//	Summary over rows of query
+		completeSummaryQuery = null;
+		if(getSummaryQuery() != null && Util.isEmpty(getGroupBy(), true)) {
+			completeSummaryQuery = getSummaryQuery().getQuery(query);
 		}
-
-		// Add Group By
+		StringBuffer completeQuery = new StringBuffer(queryWithKeyset);
+		StringBuffer completeQueryWithoutLimit = new StringBuffer(query);
+		// Add Group By, the count is of groups
 		if(!Util.isEmpty(getGroupBy(), true)) {
 			completeQuery.append(" GROUP BY ").append(getGroupBy());
 			completeQueryWithoutLimit.append(" GROUP BY ").append(getGroupBy());
+		} else {
+			completeQueryWithoutLimit = new StringBuffer(countQuery);
 		}
-
 		// Add Order By
 		if(!Util.isEmpty(getOrderBy(), true)) {
 			completeQuery.append(" ORDER BY ").append(getOrderBy());
-			completeQueryWithoutLimit.append(" ORDER BY ").append(getOrderBy());
+		}
+
+		//	Add Limit records, with keyset the previous rows are excluded by condition
+		if(this.limit != NO_LIMIT) {
+			if(this.limit == 0) {
+				withLimit(100, 0);
+			}
+			completeQuery.append(dialect.getLimitClause(this.limit, isKeyset? 0: this.offset, completeQueryParameters));
 		}
 
 		withCompleteQueryCount(completeQueryWithoutLimit.toString());
@@ -268,6 +436,85 @@ public class QueryDefinition {
 		return this;
 	}
 	
+	/**
+	 * Get column of table for a condition, the column with greater alias is used (column or column _To)
+	 * @param conditionColumnName
+	 * @return column or null
+	 */
+	private PrintFormatColumn getConditionColumn(String conditionColumnName) {
+		if(template != null) {
+			return template.getConditionColumn(conditionColumnName);
+		}
+		Optional<PrintFormatColumn> maybeColumn = getColumns()
+			.stream()
+			.filter(column -> {
+				return conditionColumnName.equals(column.getColumnName())
+					|| conditionColumnName.equals(column.getColumnName() + "_To");
+			})
+			.sorted(Comparator.comparing(PrintFormatColumn::getColumnNameAlias).reversed())
+			.findFirst()
+		;
+		return maybeColumn.orElse(null);
+	}
+
+	/**
+	 * Compile query and count query with conditions, without access restrictions and limit
+	 * @param keysetCondition
+	 * @return
+	 */
+	private QueryTemplate.CompiledQuery compileQuery(String keysetCondition) {
+		String query = getQuery();
+		if(!Util.isEmpty(this.getDynamicWhereClause(), true)) {
+			query = query + " WHERE " + this.getDynamicWhereClause();
+		}
+		String queryWithKeyset = query;
+		if(!Util.isEmpty(keysetCondition, true)) {
+			if(!Util.isEmpty(this.getDynamicWhereClause(), true)) {
+				queryWithKeyset = queryWithKeyset + " AND " + keysetCondition;
+			} else {
+				queryWithKeyset = queryWithKeyset + " WHERE " + keysetCondition;
+			}
+		}
+		List<Object> countJoinParameters = new ArrayList<Object>();
+		String countQuery = getCountQuery(countJoinParameters);
+		//	The count of groups use all joins
+		if(!Util.isEmpty(getGroupBy(), true)) {
+			countJoinParameters.clear();
+			getJoins().forEach(join -> countJoinParameters.addAll(join.getParameters()));
+		}
+		return new QueryTemplate.CompiledQuery(query, queryWithKeyset, countQuery, countJoinParameters);
+	}
+
+	/**
+	 * Get query for count rows: base table with inner joins and joins used by conditions,
+	 * the display columns are not selected
+	 * @param joinParameters parameters of joins in count query
+	 * @return
+	 */
+	private String getCountQuery(List<Object> joinParameters) {
+		String whereClause = getDynamicWhereClause();
+		boolean[] isRequired = new boolean[getJoins().size()];
+		//	A join can be required by other join after it (translation)
+		for (int index = isRequired.length - 1; index >= 0; index--) {
+			TableJoin join = getJoins().get(index);
+			isRequired[index] = join.isInner() || join.isReferencedBy(whereClause);
+			for (int nextIndex = index + 1; nextIndex < isRequired.length && !isRequired[index]; nextIndex++) {
+				isRequired[index] = isRequired[nextIndex] && join.isReferencedBy(getJoins().get(nextIndex).getClause());
+			}
+		}
+		StringBuffer countQuery = new StringBuffer("SELECT 1 FROM ").append(getTableName());
+		for (int index = 0; index < isRequired.length; index++) {
+			if(isRequired[index]) {
+				countQuery.append(getJoins().get(index).getClause());
+				joinParameters.addAll(getJoins().get(index).getParameters());
+			}
+		}
+		if(!Util.isEmpty(whereClause, true)) {
+			countQuery.append(" WHERE ").append(whereClause);
+		}
+		return countQuery.toString();
+	}
+
 	/**
 	 * Get sql restriction by operator
 	 * @param condition
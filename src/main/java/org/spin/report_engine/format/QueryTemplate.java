@@ -0,0 +1,207 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.format;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.compiere.util.Env;
+
+/**
+ * Compiled query of a print format, it is built once for each print format definition
+ * and language. The queries with conditions are kept by shape (table, role, conditions
+ * with placeholders, keyset and group by), then a request with same shape only apply
+ * access restrictions and bind parameters. The result set indexes of columns are kept because the select
+ * list is the same for all queries of template
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class QueryTemplate {
+
+	/**	Maximum compiled queries by template	*/
+	private static final int MAXIMUM_COMPILED_QUERIES = 100;
+	private final String query;
+	private final String orderBy;
+	private final List<OrderByKey> orderByKeys;
+	private final boolean isOrderedByGroups;
+	private final SummaryQuery summaryQuery;
+	private final List<TableJoin> joins;
+	private final Map<Integer, LookupReference> lookups;
+	private final List<PrintFormatColumn> columns;
+	private final List<PrintFormatColumn> queryColumns;
+	/**	Column of table for a condition by column name	*/
+	private final Map<String, PrintFormatColumn> conditionColumns;
+	/**	Compiled queries by shape	*/
+	private final Map<String, CompiledQuery> compiledQueries;
+	/**	Result set indexes by column label	*/
+	private final Map<String, Integer> columnIndexes;
+
+	private QueryTemplate(QueryDefinition queryDefinition) {
+		query = queryDefinition.getQuery();
+		orderBy = queryDefinition.getOrderBy();
+		orderByKeys = queryDefinition.getOrderByKeys();
+		isOrderedByGroups = queryDefinition.isOrderedByGroups();
+		summaryQuery = queryDefinition.getSummaryQuery();
+		joins = queryDefinition.getJoins();
+		lookups = queryDefinition.getLookups();
+		columns = queryDefinition.getColumns();
+		queryColumns = queryDefinition.getQueryColumns();
+		conditionColumns = new HashMap<String, PrintFormatColumn>();
+		//	A condition use the column with greater alias (column or column _To)
+		columns.forEach(column -> {
+			if(column.getColumnName() == null) {
+				return;
+			}
+			putConditionColumn(column.getColumnName(), column);
+			putConditionColumn(column.getColumnName() + "_To", column);
+		});
+		compiledQueries = new LinkedHashMap<String, CompiledQuery>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompiledQuery> eldest) {
+				return size() > MAXIMUM_COMPILED_QUERIES;
+			}
+		};
+		columnIndexes = new ConcurrentHashMap<String, Integer>();
+	}
+
+	/**
+	 * Template from a query definition of print format
+	 * @param queryDefinition
+	 * @return
+	 */
+	public static QueryTemplate newInstance(QueryDefinition queryDefinition) {
+		return new QueryTemplate(queryDefinition);
+	}
+
+	/**
+	 * New query definition for a request, the lists of template are shared
+	 * @return
+	 */
+	public QueryDefinition newQueryDefinition() {
+		return QueryDefinition.newInstance()
+			.withTemplate(this)
+			.withQuery(query)
+			.withOrderBy(orderBy)
+			.withOrderByKeys(orderByKeys)
+			.withOrderedByGroups(isOrderedByGroups)
+			.withSummaryQuery(summaryQuery)
+			.withJoins(joins)
+			.withLookups(lookups)
+			.withColumns(columns)
+			.withQueryColumns(queryColumns)
+		;
+	}
+
+	private void putConditionColumn(String conditionColumnName, PrintFormatColumn column) {
+		PrintFormatColumn currentColumn = conditionColumns.get(conditionColumnName);
+		if(currentColumn == null
+				|| column.getColumnNameAlias().compareTo(currentColumn.getColumnNameAlias()) > 0) {
+			conditionColumns.put(conditionColumnName, column);
+		}
+	}
+
+	/**
+	 * Get column of table for a condition
+	 * @param conditionColumnName
+	 * @return column or null
+	 */
+	public PrintFormatColumn getConditionColumn(String conditionColumnName) {
+		return conditionColumns.get(conditionColumnName);
+	}
+
+	/**
+	 * Shape of a query: values that change the sql text except parameters
+	 * @param tableName
+	 * @param whereClause
+	 * @param keysetCondition
+	 * @param groupBy
+	 * @return
+	 */
+	public String getShape(String tableName, String whereClause, String keysetCondition, String groupBy) {
+		List<Object> shape = new ArrayList<Object>();
+		shape.add(Env.getAD_Client_ID(Env.getCtx()));
+		shape.add(Env.getAD_Role_ID(Env.getCtx()));
+		shape.add(Env.getAD_User_ID(Env.getCtx()));
+		shape.add(tableName);
+		shape.add(whereClause);
+		shape.add(keysetCondition);
+		shape.add(groupBy);
+		return shape.toString();
+	}
+
+	public synchronized CompiledQuery getCompiledQuery(String shape) {
+		return compiledQueries.get(shape);
+	}
+
+	public synchronized QueryTemplate putCompiledQuery(String shape, CompiledQuery compiledQuery) {
+		compiledQueries.put(shape, compiledQuery);
+		return this;
+	}
+
+	/**
+	 * Get index of column in result set
+	 * @param label
+	 * @return index or null if it is not resolved
+	 */
+	public Integer getColumnIndex(String label) {
+		return columnIndexes.get(label);
+	}
+
+	public QueryTemplate withColumnIndex(String label, int index) {
+		columnIndexes.put(label, index);
+		return this;
+	}
+
+	/**
+	 * Queries with conditions, without access restrictions, group by, order by and limit
+	 */
+	static class CompiledQuery {
+		private final String query;
+		private final String queryWithKeyset;
+		private final String countQuery;
+		private final List<Object> countJoinParameters;
+
+		CompiledQuery(String query, String queryWithKeyset, String countQuery, List<Object> countJoinParameters) {
+			this.query = query;
+			this.queryWithKeyset = queryWithKeyset;
+			this.countQuery = countQuery;
+			this.countJoinParameters = countJoinParameters;
+		}
+
+		String getQuery() {
+			return query;
+		}
+
+		String getQueryWithKeyset() {
+			return queryWithKeyset;
+		}
+
+		String getCountQuery() {
+			return countQuery;
+		}
+
+		/**
+		 * Parameters of joins included in count query
+		 * @return
+		 */
+		List<Object> getCountJoinParameters() {
+			return countJoinParameters;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.format;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.compiere.util.CLogger;
+import org.compiere.util.Language;
+import org.spin.report_engine.data.Cell;
+import org.spin.report_engine.mapper.IColumnMapping;
+import org.spin.report_engine.mapper.MappingRegistry;
+
+/**
+ * Binding plan between print format items and the columns of a query result.
+ * It is compiled once per query: each item is resolved to the fixed result set
+ * indexes of its value and display columns and to its column mapping, so the
+ * row loop only read values by index.
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class RowBindingPlan {
+
+	/**	Item bindings in print format order	*/
+	private final ItemBinding[] bindings;
+	/**	Indexes are resolved from result set	*/
+	private boolean isResolved;
+	/**	Template with indexes of previous queries	*/
+	private final QueryTemplate template;
+
+	private static final CLogger logger = CLogger.getCLogger(RowBindingPlan.class);
+
+	private RowBindingPlan(List<PrintFormatItem> items, List<PrintFormatColumn> queryColumns, QueryTemplate template) {
+		this.template = template;
+		MappingRegistry.RequestScope mappings = MappingRegistry.getInstance().newRequestScope();
+		bindings = new ItemBinding[items.size()];
+		for (int itemIndex = 0; itemIndex < items.size(); itemIndex++) {
+			PrintFormatItem item = items.get(itemIndex);
+			List<ColumnBinding> columns = new ArrayList<ColumnBinding>();
+			for (PrintFormatColumn column : queryColumns) {
+				if(column.getColumnName() != null && column.getColumnName().equals(item.getColumnName())) {
+					columns.add(new ColumnBinding(column));
+				}
+			}
+			IColumnMapping mapping = mappings.getMapping(item.getMappingClassName());
+			bindings[itemIndex] = new ItemBinding(item, columns.toArray(new ColumnBinding[columns.size()]), mapping);
+		}
+	}
+
+	/**
+	 * Compile a plan for items and columns of query definition
+	 * @param items
+	 * @param queryDefinition
+	 * @return
+	 */
+	public static RowBindingPlan newInstance(List<PrintFormatItem> items, QueryDefinition queryDefinition) {
+		return new RowBindingPlan(items, queryDefinition.getQueryColumns(), queryDefinition.getTemplate());
+	}
+
+	public boolean isResolved() {
+		return isResolved;
+	}
+
+	/**
+	 * Resolve result set indexes from column labels, it is called once before read rows.
+	 * The indexes already resolved by template are not searched again
+	 * @param resultSet
+	 * @return
+	 */
+	public RowBindingPlan resolve(ResultSet resultSet) {
+		for (ItemBinding binding : bindings) {
+			for (ColumnBinding column : binding.columns) {
+				String label = column.isDisplayValue? column.column.getColumnNameAlias(): column.column.getColumnName();
+				Integer index = template == null? null: template.getColumnIndex(label);
+				if(index != null) {
+					column.index = index;
+					continue;
+				}
+				try {
+					column.index = resultSet.findColumn(label);
+					if(template != null) {
+						template.withColumnIndex(label, column.index);
+					}
+				} catch (SQLException e) {
+					column.index = -1;
+					logger.warning("Column " + label + " not found: " + e.getLocalizedMessage());
+				}
+			}
+		}
+		isResolved = true;
+		return this;
+	}
+
+	/**
+	 * Read current row of result set and send a cell for each item
+	 * @param resultSet
+	 * @param language
+	 * @param consumer receive item and cell, cell is null when item is not part of query
+	 */
+	public void bindRow(ResultSet resultSet, Language language, BiConsumer<PrintFormatItem, Cell> consumer) {
+		if(!isResolved) {
+			resolve(resultSet);
+		}
+		for (ItemBinding binding : bindings) {
+			Cell cell = null;
+			if(binding.columns.length > 0) {
+				cell = Cell.newInstance();
+				for (ColumnBinding column : binding.columns) {
+					try {
+						if(column.isDisplayValue) {
+							cell.withDisplayValue(resultSet.getString(column.index));
+						} else {
+							cell.withValue(resultSet.getObject(column.index));
+							//	Apply Mask
+							if(binding.mapping != null) {
+								binding.mapping.processValue(binding.item, column.column, language, resultSet, cell);
+								cell.withFormatted(binding.mapping.isCompleteFromQuery());
+							}
+						}
+					} catch (Exception e) {
+						logger.warning(e.getLocalizedMessage());
+					}
+				}
+			}
+			consumer.accept(binding.item, cell);
+		}
+	}
+
+	/**
+	 * Item with columns and mapping
+	 */
+	private static class ItemBinding {
+		private final PrintFormatItem item;
+		private final ColumnBinding[] columns;
+		private final IColumnMapping mapping;
+
+		private ItemBinding(PrintFormatItem item, ColumnBinding[] columns, IColumnMapping mapping) {
+			this.item = item;
+			this.columns = columns;
+			this.mapping = mapping;
+		}
+	}
+
+	/**
+	 * Column with result set index
+	 */
+	private static class ColumnBinding {
+		private final PrintFormatColumn column;
+		private final boolean isDisplayValue;
+		private int index;
+
+		private ColumnBinding(PrintFormatColumn column) {
+			this.column = column;
+			this.isDisplayValue = column.isDisplayValue();
+			this.index = -1;
+		}
+	}
+}
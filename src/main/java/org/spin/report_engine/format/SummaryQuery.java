@@ -0,0 +1,241 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.format;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.compiere.util.DisplayType;
+import org.spin.report_engine.data.Cell;
+import org.spin.report_engine.data.SummaryFunction;
+
+/**
+ * Aggregate query for summary of report: the rows of report query are grouped by
+ * ROLLUP of group items, then each result row is a group summary with SUM, COUNT, MIN, MAX
+ * and VAR_SAMP of summarized items, the row of all groups rolled up is the grand total.
+ * Only numeric items are summarized in database, the null values are summarized as zero
+ * like the summary of rows.
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class SummaryQuery {
+
+	/**	Group items sorted by level	*/
+	private List<PrintFormatItem> groupItems;
+	/**	Display column of group items, null when item has not display column	*/
+	private List<String> groupDisplayColumns;
+	/**	Summarized items	*/
+	private List<PrintFormatItem> summarizedItems;
+	/**	Alias of report query	*/
+	private static final String REPORT_ALIAS = "ReportData";
+	/**	Record count of group	*/
+	private static final String COUNT_ALIAS = "RecordCount";
+
+	private SummaryQuery() {
+		groupItems = new ArrayList<PrintFormatItem>();
+		groupDisplayColumns = new ArrayList<String>();
+		summarizedItems = new ArrayList<PrintFormatItem>();
+	}
+
+	public static SummaryQuery newInstance() {
+		return new SummaryQuery();
+	}
+
+	/**
+	 * Validate if item can be summarized in database
+	 * @param item
+	 * @return
+	 */
+	public static boolean isSupported(PrintFormatItem item) {
+		return DisplayType.isNumeric(item.getReferenceId());
+	}
+
+	/**
+	 * Add group item, the groups are added by level
+	 * @param item
+	 * @param displayColumnName column name of display value, can be null
+	 * @return
+	 */
+	public SummaryQuery withGroupItem(PrintFormatItem item, String displayColumnName) {
+		groupItems.add(item);
+		groupDisplayColumns.add(displayColumnName);
+		return this;
+	}
+
+	public SummaryQuery withSummarizedItem(PrintFormatItem item) {
+		summarizedItems.add(item);
+		return this;
+	}
+
+	public List<PrintFormatItem> getGroupItems() {
+		return groupItems;
+	}
+
+	public List<PrintFormatItem> getSummarizedItems() {
+		return summarizedItems;
+	}
+
+	/**
+	 * Get aggregate query over report query, the report query must have conditions
+	 * and access restrictions but not order
+	 * @param reportQuery
+	 * @return
+	 */
+	public String getQuery(String reportQuery) {
+		StringBuffer select = new StringBuffer();
+		StringBuffer rollup = new StringBuffer();
+		StringBuffer orderBy = new StringBuffer();
+		for (int level = 0; level < groupItems.size(); level++) {
+			PrintFormatItem item = groupItems.get(level);
+			String valueColumn = getReportColumnName(item.getColumnName());
+			String displayColumn = groupDisplayColumns.get(level);
+			select.append("GROUPING(").append(valueColumn).append(") AS ").append(getGroupingAlias(level))
+				.append(", ").append(valueColumn).append(" AS ").append(getGroupValueAlias(level));
+			if(rollup.length() > 0) {
+				rollup.append(", ");
+			}
+			rollup.append("(").append(valueColumn);
+			//	Rolled up row is before rows of group
+			if(orderBy.length() > 0) {
+				orderBy.append(", ");
+			}
+			orderBy.append(getGroupingAlias(level)).append(" DESC");
+			if(displayColumn != null) {
+				displayColumn = getReportColumnName(displayColumn);
+				select.append(", ").append(displayColumn).append(" AS ").append(getGroupDisplayAlias(level));
+				rollup.append(", ").append(displayColumn);
+				orderBy.append(", ").append(getGroupDisplayAlias(level));
+				if(item.isDesc()) {
+					orderBy.append(" DESC");
+				}
+			}
+			rollup.append(")");
+			select.append(", ");
+			orderBy.append(", ").append(getGroupValueAlias(level));
+			if(item.isDesc()) {
+				orderBy.append(" DESC");
+			}
+		}
+		select.append("COUNT(*) AS ").append(COUNT_ALIAS);
+		summarizedItems.forEach(item -> {
+			String value = "COALESCE(" + getReportColumnName(item.getColumnName()) + ", 0)";
+			int itemId = item.getPrintFormatItemId();
+			select.append(", SUM(").append(value).append(") AS ").append(getFunctionAlias(SummaryFunction.F_SUM, itemId));
+			if(item.isMinCalc()) {
+				select.append(", MIN(").append(value).append(") AS ").append(getFunctionAlias(SummaryFunction.F_MIN, itemId));
+			}
+			if(item.isMaxCalc()) {
+				select.append(", MAX(").append(value).append(") AS ").append(getFunctionAlias(SummaryFunction.F_MAX, itemId));
+			}
+			if(item.isVarianceCalc() || item.isDeviationCalc()) {
+				select.append(", VAR_SAMP(").append(value).append(") AS ").append(getFunctionAlias(SummaryFunction.F_VARIANCE, itemId));
+			}
+		});
+		StringBuffer query = new StringBuffer("SELECT ").append(select)
+			.append(" FROM (").append(reportQuery).append(") ").append(REPORT_ALIAS);
+		if(rollup.length() > 0) {
+			query.append(" GROUP BY ROLLUP(").append(rollup).append(")")
+				.append(" ORDER BY ").append(orderBy);
+		}
+		return query.toString();
+	}
+
+	/**
+	 * Get level of last group of row, -1 for grand total
+	 * @param resultSet
+	 * @return
+	 * @throws SQLException
+	 */
+	public int getGroupLevel(ResultSet resultSet) throws SQLException {
+		for (int level = 0; level < groupItems.size(); level++) {
+			if(resultSet.getInt(getGroupingAlias(level)) == 1) {
+				return level - 1;
+			}
+		}
+		return groupItems.size() - 1;
+	}
+
+	/**
+	 * Read current row of aggregate query and send a cell for each group item until level
+	 * and for each summarized item
+	 * @param resultSet
+	 * @param groupLevel
+	 * @param consumer
+	 * @throws SQLException
+	 */
+	public void bindRow(ResultSet resultSet, int groupLevel, BiConsumer<PrintFormatItem, Cell> consumer) throws SQLException {
+		for (int level = 0; level <= groupLevel; level++) {
+			Cell cell = Cell.newInstance().withValue(resultSet.getObject(getGroupValueAlias(level)));
+			if(groupDisplayColumns.get(level) != null) {
+				cell.withDisplayValue(resultSet.getString(getGroupDisplayAlias(level)));
+			}
+			consumer.accept(groupItems.get(level), cell);
+		}
+		long count = resultSet.getLong(COUNT_ALIAS);
+		for (PrintFormatItem item : summarizedItems) {
+			int itemId = item.getPrintFormatItemId();
+			BigDecimal minimum = null;
+			BigDecimal maximum = null;
+			BigDecimal variance = null;
+			if(item.isMinCalc()) {
+				minimum = resultSet.getBigDecimal(getFunctionAlias(SummaryFunction.F_MIN, itemId));
+			}
+			if(item.isMaxCalc()) {
+				maximum = resultSet.getBigDecimal(getFunctionAlias(SummaryFunction.F_MAX, itemId));
+			}
+			if(item.isVarianceCalc() || item.isDeviationCalc()) {
+				variance = resultSet.getBigDecimal(getFunctionAlias(SummaryFunction.F_VARIANCE, itemId));
+			}
+			SummaryFunction function = SummaryFunction.newInstance(item)
+				.withAggregate(
+					resultSet.getBigDecimal(getFunctionAlias(SummaryFunction.F_SUM, itemId)),
+					count,
+					minimum,
+					maximum,
+					variance
+				)
+			;
+			consumer.accept(item, Cell.newInstance().withValue(function.getSumValue()).withFunction(function));
+		}
+	}
+
+	private String getReportColumnName(String columnName) {
+		return REPORT_ALIAS + "." + columnName;
+	}
+
+	private String getGroupingAlias(int level) {
+		return "Grouping_" + (level + 1);
+	}
+
+	private String getGroupValueAlias(int level) {
+		return "GroupValue_" + (level + 1);
+	}
+
+	private String getGroupDisplayAlias(int level) {
+		return "GroupDisplay_" + (level + 1);
+	}
+
+	private String getFunctionAlias(char function, int printFormatItemId) {
+		return SummaryFunction.getFunctionName(function) + "_" + printFormatItemId;
+	}
+
+	@Override
+	public String toString() {
+		return "SummaryQuery [groupItems=" + groupItems + ", summarizedItems=" + summarizedItems + "]";
+	}
+}
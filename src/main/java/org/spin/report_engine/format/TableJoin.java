@@ -0,0 +1,103 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.format;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Join of a reference table in report query. The inner joins can exclude
+ * rows, the outer joins are only needed when a condition use the alias
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class TableJoin {
+
+	private String alias;
+	private boolean isInner;
+	private String clause;
+	private Pattern aliasPattern;
+	private List<Object> parameters;
+
+	private TableJoin() {
+		parameters = new ArrayList<Object>();
+	}
+
+	public static TableJoin newInstance() {
+		return new TableJoin();
+	}
+
+	public String getAlias() {
+		return alias;
+	}
+
+	public TableJoin withAlias(String alias) {
+		this.alias = alias;
+		this.aliasPattern = Pattern.compile("\\b" + Pattern.quote(alias) + "\\.", Pattern.CASE_INSENSITIVE);
+		return this;
+	}
+
+	public boolean isInner() {
+		return isInner;
+	}
+
+	public TableJoin withInner(boolean isInner) {
+		this.isInner = isInner;
+		return this;
+	}
+
+	/**
+	 * Complete join clause: JOIN table alias ON (...)
+	 * @return
+	 */
+	public String getClause() {
+		return clause;
+	}
+
+	public TableJoin withClause(String clause) {
+		this.clause = clause;
+		return this;
+	}
+
+	/**
+	 * Values of bind parameters in join clause, in order
+	 * @return
+	 */
+	public List<Object> getParameters() {
+		return parameters;
+	}
+
+	public TableJoin withParameters(List<Object> parameters) {
+		this.parameters = parameters;
+		return this;
+	}
+
+	/**
+	 * Validate if a sql use columns of this join
+	 * @param sql
+	 * @return
+	 */
+	public boolean isReferencedBy(String sql) {
+		if(sql == null || aliasPattern == null) {
+			return false;
+		}
+		return aliasPattern.matcher(sql).find();
+	}
+
+	@Override
+	public String toString() {
+		return "TableJoin [alias=" + alias + ", isInner=" + isInner + ", clause=" + clause + "]";
+	}
+}
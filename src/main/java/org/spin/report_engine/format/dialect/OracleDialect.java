@@ -0,0 +1,42 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.format.dialect;
+
+import java.util.List;
+
+import org.compiere.util.DB;
+
+/**
+ * Oracle dialect: row limiting clause (12c) and expanded keyset condition,
+ * Oracle does not support row value comparison with greater or less than
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class OracleDialect extends QueryDialect {
+
+	@Override
+	public String getLimitClause(int limit, int offset, List<Object> parameters) {
+		parameters.add(offset);
+		parameters.add(limit);
+		return " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+	}
+
+	/**
+	 * Rows of table from statistics, explain plan of Oracle need write a plan table
+	 */
+	@Override
+	public int getEstimatedCount(String countQuery, String tableName, List<Object> parameters) {
+		return Math.max(DB.getSQLValueEx(null, "SELECT NUM_ROWS FROM USER_TABLES WHERE TABLE_NAME = UPPER(?)", tableName), 0);
+	}
+}
@@ -0,0 +1,127 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.format.dialect;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.compiere.util.CLogger;
+import org.compiere.util.DB;
+import org.spin.report_engine.format.OrderByKey;
+
+/**
+ * PostgreSQL dialect: LIMIT / OFFSET and row value comparison for keyset
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class PostgreSQLDialect extends QueryDialect {
+
+	/**	Rows of first node of plan	*/
+	private static final Pattern PLAN_ROWS = Pattern.compile("rows=(\\d+)");
+
+	/**	Executions of a statement before use a server side prepared statement	*/
+	private static final int PREPARE_THRESHOLD = 1;
+	/**	Statement interface of driver, it is null if driver is not available	*/
+	private static Class<?> driverStatementClass;
+	private static Method setPrepareThreshold;
+
+	private static final CLogger logger = CLogger.getCLogger(PostgreSQLDialect.class);
+
+	static {
+		try {
+			driverStatementClass = Class.forName("org.postgresql.PGStatement");
+			setPrepareThreshold = driverStatementClass.getMethod("setPrepareThreshold", int.class);
+		} catch (Exception e) {
+			logger.warning("PostgreSQL statement not found: " + e.getLocalizedMessage());
+			driverStatementClass = null;
+		}
+	}
+
+	/**
+	 * The report statements are server side prepared from first execution, the driver keep
+	 * it by connection then a new statement with same sql does not parse and plan again
+	 */
+	@Override
+	public PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+		PreparedStatement statement = super.prepareStatement(connection, sql);
+		if(driverStatementClass != null && statement.isWrapperFor(driverStatementClass)) {
+			try {
+				setPrepareThreshold.invoke(statement.unwrap(driverStatementClass), PREPARE_THRESHOLD);
+			} catch (Exception e) {
+				logger.fine("Prepare threshold not changed: " + e.getLocalizedMessage());
+			}
+		}
+		return statement;
+	}
+
+	@Override
+	public String getLimitClause(int limit, int offset, List<Object> parameters) {
+		parameters.add(limit);
+		parameters.add(offset);
+		return " LIMIT ? OFFSET ?";
+	}
+
+	/**
+	 * Rows estimated by planner for query, the statistics of table are used when
+	 * query can not be explained
+	 */
+	@Override
+	public int getEstimatedCount(String countQuery, String tableName, List<Object> parameters) {
+		try {
+			String plan = DB.getSQLValueStringEx(null, "EXPLAIN " + countQuery, parameters);
+			if(plan != null) {
+				Matcher matcher = PLAN_ROWS.matcher(plan);
+				if(matcher.find()) {
+					return (int) Math.min(Long.parseLong(matcher.group(1)), Integer.MAX_VALUE);
+				}
+			}
+		} catch (Exception e) {
+			logger.fine("Query can not be explained: " + e.getLocalizedMessage());
+		}
+		//	Never analyzed table has -1 tuples
+		return Math.max(DB.getSQLValueEx(null, "SELECT CAST(reltuples AS INTEGER) FROM pg_class WHERE relname = LOWER(?)", tableName), 0);
+	}
+
+	/**
+	 * Row value comparison (k1, k2) > (?, ?) can use a composite index, it is
+	 * valid only when all keys have same direction and can not be null
+	 */
+	@Override
+	public String getKeysetCondition(List<OrderByKey> orderByKeys, List<Object> keyValues, List<Object> parameters) {
+		boolean isDescending = orderByKeys.get(0).isDescending();
+		boolean isRowValue = orderByKeys.stream()
+			.allMatch(key -> !key.isNullable() && key.isDescending() == isDescending)
+		;
+		if(!isRowValue) {
+			return getExpandedKeysetCondition(orderByKeys, keyValues, parameters);
+		}
+		StringBuffer keys = new StringBuffer();
+		StringBuffer values = new StringBuffer();
+		for (int keyIndex = 0; keyIndex < orderByKeys.size(); keyIndex++) {
+			if(keyIndex > 0) {
+				keys.append(", ");
+				values.append(", ");
+			}
+			keys.append(orderByKeys.get(keyIndex).getExpression());
+			values.append("?");
+			parameters.add(keyValues.get(keyIndex));
+		}
+		return "(" + keys + ") " + (isDescending? "<": ">") + " (" + values + ")";
+	}
+}
@@ -0,0 +1,127 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.format.dialect;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.compiere.util.DB;
+import org.spin.report_engine.format.OrderByKey;
+
+/**
+ * SQL dialect for clauses that are not portable between databases:
+ * limit of rows and keyset conditions
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public abstract class QueryDialect {
+
+	private static QueryDialect postgreSQLDialect;
+	private static QueryDialect oracleDialect;
+
+	/**
+	 * Get dialect of current database
+	 * @return
+	 */
+	public static QueryDialect getInstance() {
+		if(DB.isOracle()) {
+			if(oracleDialect == null) {
+				oracleDialect = new OracleDialect();
+			}
+			return oracleDialect;
+		}
+		if(postgreSQLDialect == null) {
+			postgreSQLDialect = new PostgreSQLDialect();
+		}
+		return postgreSQLDialect;
+	}
+
+	/**
+	 * Clause to append after ORDER BY for limit rows, limit and offset are bind parameters
+	 * added in order, then all pages have the same statement
+	 * @param limit
+	 * @param offset
+	 * @param parameters
+	 * @return
+	 */
+	public abstract String getLimitClause(int limit, int offset, List<Object> parameters);
+
+	/**
+	 * Prepare a forward only and read only statement for query, the SQL is converted
+	 * to database syntax like DB.prepareStatement does
+	 * @param connection
+	 * @param sql
+	 * @return
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+		return connection.prepareStatement(DB.getDatabase().convertStatement(sql), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+	}
+
+	/**
+	 * Get estimated count of rows of a count query from planner or table statistics,
+	 * it does not read the rows
+	 * @param countQuery
+	 * @param tableName
+	 * @param parameters
+	 * @return
+	 */
+	public abstract int getEstimatedCount(String countQuery, String tableName, List<Object> parameters);
+
+	/**
+	 * Condition for read rows after last key values, the parameters are added in order
+	 * @param orderByKeys
+	 * @param keyValues
+	 * @param parameters
+	 * @return
+	 */
+	public String getKeysetCondition(List<OrderByKey> orderByKeys, List<Object> keyValues, List<Object> parameters) {
+		return getExpandedKeysetCondition(orderByKeys, keyValues, parameters);
+	}
+
+	/**
+	 * Portable keyset condition: (k1 > ?) OR (k1 = ? AND k2 > ?) OR ...
+	 * Nulls are sorted last for ascending order on both databases, then a nullable
+	 * ascending key also accepts nulls
+	 * @param orderByKeys
+	 * @param keyValues
+	 * @param parameters
+	 * @return
+	 */
+	protected String getExpandedKeysetCondition(List<OrderByKey> orderByKeys, List<Object> keyValues, List<Object> parameters) {
+		StringBuffer condition = new StringBuffer("(");
+		for (int keyIndex = 0; keyIndex < orderByKeys.size(); keyIndex++) {
+			if(keyIndex > 0) {
+				condition.append(" OR ");
+			}
+			condition.append("(");
+			for (int previousIndex = 0; previousIndex < keyIndex; previousIndex++) {
+				condition.append(orderByKeys.get(previousIndex).getExpression()).append(" = ? AND ");
+				parameters.add(keyValues.get(previousIndex));
+			}
+			OrderByKey key = orderByKeys.get(keyIndex);
+			if(key.isNullable() && !key.isDescending()) {
+				condition.append("(").append(key.getExpression()).append(" > ? OR ").append(key.getExpression()).append(" IS NULL)");
+			} else {
+				condition.append(key.getExpression()).append(key.isDescending()? " < ?": " > ?");
+			}
+			parameters.add(keyValues.get(keyIndex));
+			condition.append(")");
+		}
+		return condition.append(")").toString();
+	}
+}
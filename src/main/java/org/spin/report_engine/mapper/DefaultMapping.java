@@ -16,16 +16,13 @@ package org.spin.report_engine.mapper;
 
 import java.math.BigDecimal;
 import java.sql.ResultSet;
-import java.sql.Timestamp;
 
 import org.adempiere.core.domains.models.I_AD_ChangeLog;
 import org.adempiere.core.domains.models.I_AD_Table;
 import org.compiere.model.MTable;
-import org.compiere.model.PO;
 import org.compiere.util.DisplayType;
 import org.compiere.util.Env;
 import org.compiere.util.Language;
-import org.compiere.util.Msg;
 import org.compiere.util.Util;
 import org.spin.report_engine.data.Cell;
 import org.spin.report_engine.format.PrintFormatColumn;
@@ -44,6 +41,16 @@ public class DefaultMapping implements IColumnMapping {
 		return new DefaultMapping();
 	}
 	
+	@Override
+	public boolean isThreadSafe() {
+		return true;
+	}
+	
+	@Override
+	public boolean isCompleteFromQuery() {
+		return true;
+	}
+	
 	public void processValue(PrintFormatItem printFormatLine, Language language, Cell cell) {
 		processValue(printFormatLine, null, language, null, cell);
 	}
@@ -56,9 +63,9 @@ public class DefaultMapping implements IColumnMapping {
 			if(resultSet!= null && column != null) {
 				final int displayTypeId = column.getReferenceId();
 				if(DisplayType.isID(displayTypeId) || column.getColumnName().equals(I_AD_ChangeLog.COLUMNNAME_Record_ID)) {
-					Object value = resultSet.getObject(column.getColumnName());
+					//	Value was read from same column by caller
 					Integer castValue = NumberManager.getIntegerFromObject(
-						value
+						cell.getValue()
 					);
 					cell.withValue(castValue);
 					if(column.getColumnName().equals(I_AD_ChangeLog.COLUMNNAME_Record_ID)) {
@@ -69,13 +76,9 @@ public class DefaultMapping implements IColumnMapping {
 								int valueId = resultSet.getInt(column.getColumnName());
 								// int valueId = NumberManager.getIntFromObject(value);
 								cell.withTableName(tableName);
+								//	Display value is resolved by table for all rows after read
 								if (RecordUtil.isValidId(valueId, table)) {
-									PO entity = table.getPO(valueId, null);
-									cell.withValue(valueId)
-										.withDisplayValue(
-											entity.getDisplayValue()
-										)
-									;
+									cell.withValue(valueId);
 								}
 							}
 						} catch (Exception e) {
@@ -85,57 +88,56 @@ public class DefaultMapping implements IColumnMapping {
 					return;
 				}
 			}
-			if(DisplayType.isDate(printFormatLine.getReferenceId())) {
+			ValueFormatter formatter = ValueFormatter.getInstance();
+			final int referenceId = printFormatLine.getReferenceId();
+			final String formatPattern = printFormatLine.getFormatPattern();
+			if(DisplayType.isDate(referenceId)) {
 				if(cell.getValue() != null) {
-					Timestamp date = (Timestamp) cell.getValue();
-					cell.withDisplayValue(DisplayType.getDateFormat(printFormatLine.getReferenceId(), language, printFormatLine.getFormatPattern()).format(date));
+					cell.withDisplayValue(formatter.formatDate(referenceId, language, formatPattern, cell.getValue()));
 				}
-			} else if(DisplayType.isNumeric(printFormatLine.getReferenceId())) {
+			} else if(DisplayType.isNumeric(referenceId)) {
 				if(cell.getValue() != null) {
 					if(BigDecimal.class.isAssignableFrom(cell.getValue().getClass())) {
-						BigDecimal number = (BigDecimal) cell.getValue();
-						cell.withDisplayValue(DisplayType.getNumberFormat(printFormatLine.getReferenceId(), language, printFormatLine.getFormatPattern()).format(number));
+						cell.withDisplayValue(formatter.formatNumber(referenceId, language, formatPattern, (BigDecimal) cell.getValue()));
 					}
 				}
-			} else if(printFormatLine.getReferenceId() == DisplayType.YesNo) {
+			} else if(referenceId == DisplayType.YesNo) {
 				if(cell.getValue() != null) {
 					if(Boolean.class.isAssignableFrom(cell.getValue().getClass())) {
-						boolean booleanValue = (boolean) cell.getValue();
-						cell.withDisplayValue(Msg.getMsg(Env.getCtx(), booleanValue ? "Y" : "N"));
+						cell.withDisplayValue(formatter.getYesNo((boolean) cell.getValue()));
 					} else if(String.class.isAssignableFrom(cell.getValue().getClass())) {
-						boolean booleanValue = BooleanManager.getBooleanFromString(String.valueOf(cell.getValue()));
-						cell.withDisplayValue(Msg.getMsg(Env.getCtx(), booleanValue ? "Y" : "N"));
+						cell.withDisplayValue(formatter.getYesNo(BooleanManager.getBooleanFromString(String.valueOf(cell.getValue()))));
 					}
 				}
 			}
 			//	Set display value to functions
 			BigDecimal value = cell.getSum();
 			if(value != null) {
-				cell.withSumDisplayValue(DisplayType.getNumberFormat(printFormatLine.getReferenceId(), language, printFormatLine.getFormatPattern()).format(value));
+				cell.withSumDisplayValue(formatter.formatNumber(referenceId, language, formatPattern, value));
 			}
 			value = cell.getMean();
 			if(value != null) {
-				cell.withMeanDisplayValue(DisplayType.getNumberFormat(printFormatLine.getReferenceId(), language, printFormatLine.getFormatPattern()).format(value));
+				cell.withMeanDisplayValue(formatter.formatNumber(referenceId, language, formatPattern, value));
 			}
 			value = cell.getCount();
 			if(value != null) {
-				cell.withCountDisplayValue(DisplayType.getNumberFormat(printFormatLine.getReferenceId(), language, printFormatLine.getFormatPattern()).format(value));
+				cell.withCountDisplayValue(formatter.formatNumber(referenceId, language, formatPattern, value));
 			}
 			value = cell.getMinimum();
 			if(value != null) {
-				cell.withMinimumDisplayValue(DisplayType.getNumberFormat(printFormatLine.getReferenceId(), language, printFormatLine.getFormatPattern()).format(value));
+				cell.withMinimumDisplayValue(formatter.formatNumber(referenceId, language, formatPattern, value));
 			}
 			value = cell.getMaximum();
 			if(value != null) {
-				cell.withMaximumDisplayValue(DisplayType.getNumberFormat(printFormatLine.getReferenceId(), language, printFormatLine.getFormatPattern()).format(value));
+				cell.withMaximumDisplayValue(formatter.formatNumber(referenceId, language, formatPattern, value));
 			}
 			value = cell.getVariance();
 			if(value != null) {
-				cell.withVarianceDisplayValue(DisplayType.getNumberFormat(printFormatLine.getReferenceId(), language, printFormatLine.getFormatPattern()).format(value));
+				cell.withVarianceDisplayValue(formatter.formatNumber(referenceId, language, formatPattern, value));
 			}
 			value = cell.getDeviation();
 			if(value != null) {
-				cell.withDeviationDisplayValue(DisplayType.getNumberFormat(printFormatLine.getReferenceId(), language, printFormatLine.getFormatPattern()).format(value));
+				cell.withDeviationDisplayValue(formatter.formatNumber(referenceId, language, formatPattern, value));
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
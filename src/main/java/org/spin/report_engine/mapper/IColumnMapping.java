@@ -44,4 +44,21 @@ public interface IColumnMapping {
 	 * @param cell
 	 */
 	public void processValue(PrintFormatItem printFormatLine, Language language, Cell cell);
+	
+	/**
+	 * Mapping without state can be shared between requests and threads, else a new instance is used for each request
+	 * @return
+	 */
+	public default boolean isThreadSafe() {
+		return false;
+	}
+	
+	/**
+	 * Value processed from query is complete, then it is not processed again from complete list.
+	 * A mapping that process values from complete list must return false
+	 * @return
+	 */
+	public default boolean isCompleteFromQuery() {
+		return false;
+	}
 }
@@ -0,0 +1,187 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.mapper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.compiere.util.CLogger;
+import org.compiere.util.Util;
+import org.spin.report_engine.util.ClassLoaderMapping;
+
+/**
+ * Registry of column mappings by class name (AD_PrintFormatItem.MappingClassName).
+ * Each class is resolved once, thread safe mappings are shared as singleton and
+ * stateful mappings are instantiated once for each request using a {@link RequestScope}
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class MappingRegistry {
+
+	/**	Default instance	*/
+	private static final MappingRegistry instance = new MappingRegistry();
+	/**	Resolved classes, empty for class not found or not a mapping	*/
+	private final Map<String, Optional<Class<?>>> classes;
+	/**	Shared instances of thread safe mappings	*/
+	private final Map<String, IColumnMapping> sharedMappings;
+	/**	Default mapping	*/
+	private final IColumnMapping defaultMapping;
+	/**	Counters	*/
+	private final AtomicLong hitCount;
+	private final AtomicLong missCount;
+	private final AtomicLong negativeCount;
+
+	private static final CLogger logger = CLogger.getCLogger(MappingRegistry.class);
+
+	private MappingRegistry() {
+		classes = new ConcurrentHashMap<String, Optional<Class<?>>>();
+		sharedMappings = new ConcurrentHashMap<String, IColumnMapping>();
+		defaultMapping = DefaultMapping.newInstance();
+		hitCount = new AtomicLong();
+		missCount = new AtomicLong();
+		negativeCount = new AtomicLong();
+	}
+
+	/**
+	 * Get current instance
+	 * @return
+	 */
+	public static MappingRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Create a scope for a request, stateful mappings are kept there
+	 * @return
+	 */
+	public RequestScope newRequestScope() {
+		return new RequestScope(this);
+	}
+
+	public IColumnMapping getDefaultMapping() {
+		return defaultMapping;
+	}
+
+	/**
+	 * Get a resolved class of mapping or null if it is not a valid mapping
+	 * @param className
+	 * @return
+	 */
+	private Class<?> getMappingClass(String className) {
+		Optional<Class<?>> mappingClass = classes.get(className);
+		if(mappingClass != null) {
+			hitCount.incrementAndGet();
+			if(!mappingClass.isPresent()) {
+				negativeCount.incrementAndGet();
+			}
+			return mappingClass.orElse(null);
+		}
+		missCount.incrementAndGet();
+		mappingClass = Optional.ofNullable(ClassLoaderMapping.getHandlerClass(className));
+		if(!mappingClass.isPresent()) {
+			logger.warning("Invalid Mapping Class: " + className);
+		}
+		classes.put(className, mappingClass);
+		return mappingClass.orElse(null);
+	}
+
+	/**
+	 * Get mapping for class name, default mapping is returned for empty class name
+	 * and null is returned if class is not a valid mapping.
+	 * A new instance is returned for mappings that are not thread safe
+	 * @param className
+	 * @return
+	 */
+	public IColumnMapping getMapping(String className) {
+		if(Util.isEmpty(className, true)) {
+			return defaultMapping;
+		}
+		IColumnMapping mapping = sharedMappings.get(className);
+		if(mapping != null) {
+			hitCount.incrementAndGet();
+			return mapping;
+		}
+		Class<?> mappingClass = getMappingClass(className);
+		if(mappingClass == null) {
+			return null;
+		}
+		mapping = ClassLoaderMapping.newInstance(mappingClass);
+		if(mapping != null && mapping.isThreadSafe()) {
+			IColumnMapping currentMapping = sharedMappings.putIfAbsent(className, mapping);
+			if(currentMapping != null) {
+				mapping = currentMapping;
+			}
+		}
+		return mapping;
+	}
+
+	/**
+	 * Clear all resolved classes and instances
+	 */
+	public void reset() {
+		classes.clear();
+		sharedMappings.clear();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getNegativeCount() {
+		return negativeCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return "MappingRegistry [classes=" + classes.size() + ", sharedMappings=" + sharedMappings.size()
+				+ ", hitCount=" + hitCount + ", missCount=" + missCount + ", negativeCount=" + negativeCount + "]";
+	}
+
+	/**
+	 * Mappings used by a single request, it is not thread safe
+	 */
+	public static class RequestScope {
+		private final MappingRegistry registry;
+		private final Map<String, Optional<IColumnMapping>> mappings;
+
+		private RequestScope(MappingRegistry registry) {
+			this.registry = registry;
+			this.mappings = new HashMap<String, Optional<IColumnMapping>>();
+		}
+
+		/**
+		 * Get mapping for class name, the same instance is returned for all calls of this scope
+		 * @param className
+		 * @return
+		 */
+		public IColumnMapping getMapping(String className) {
+			if(Util.isEmpty(className, true)) {
+				return registry.getDefaultMapping();
+			}
+			Optional<IColumnMapping> mapping = mappings.get(className);
+			if(mapping == null) {
+				mapping = Optional.ofNullable(registry.getMapping(className));
+				mappings.put(className, mapping);
+			}
+			return mapping.orElse(null);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.mapper;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.Format;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.compiere.util.DisplayType;
+import org.compiere.util.Env;
+import org.compiere.util.Language;
+import org.compiere.util.Msg;
+
+/**
+ * Formatter of display values, the date and number formats are created once by
+ * display type, language and pattern. It is confined to a thread (formats are not thread safe),
+ * then each thread has its own instance. The formatted values are kept for repeated
+ * values until a maximum by format, for columns with few distinct values
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class ValueFormatter {
+
+	/**	Instance by thread	*/
+	private static final ThreadLocal<ValueFormatter> instance = ThreadLocal.withInitial(ValueFormatter::new);
+	/**	Maximum formatted values kept by format	*/
+	private static final int MAXIMUM_VALUES = 1000;
+	/**	Formats by display type, language and pattern	*/
+	private final Map<String, FormatValues> formats;
+	/**	Yes / No messages by language	*/
+	private final Map<String, String[]> yesNoMessages;
+
+	private ValueFormatter() {
+		formats = new HashMap<String, FormatValues>();
+		yesNoMessages = new HashMap<String, String[]>();
+	}
+
+	/**
+	 * Get formatter of current thread
+	 * @return
+	 */
+	public static ValueFormatter getInstance() {
+		return instance.get();
+	}
+
+	/**
+	 * Get date format, it must be used only by current thread
+	 * @param displayType
+	 * @param language
+	 * @param pattern
+	 * @return
+	 */
+	public SimpleDateFormat getDateFormat(int displayType, Language language, String pattern) {
+		return (SimpleDateFormat) getFormat(displayType, language, pattern, true).format;
+	}
+
+	/**
+	 * Get number format, it must be used only by current thread
+	 * @param displayType
+	 * @param language
+	 * @param pattern
+	 * @return
+	 */
+	public DecimalFormat getNumberFormat(int displayType, Language language, String pattern) {
+		return (DecimalFormat) getFormat(displayType, language, pattern, false).format;
+	}
+
+	/**
+	 * Format a date
+	 * @param displayType
+	 * @param language
+	 * @param pattern
+	 * @param value
+	 * @return
+	 */
+	public String formatDate(int displayType, Language language, String pattern, Object value) {
+		return getFormat(displayType, language, pattern, true).format(value);
+	}
+
+	/**
+	 * Format a number
+	 * @param displayType
+	 * @param language
+	 * @param pattern
+	 * @param value
+	 * @return
+	 */
+	public String formatNumber(int displayType, Language language, String pattern, BigDecimal value) {
+		return getFormat(displayType, language, pattern, false).format(value);
+	}
+
+	/**
+	 * Get message of Yes / No for language of context
+	 * @param value
+	 * @return
+	 */
+	public String getYesNo(boolean value) {
+		String[] messages = yesNoMessages.computeIfAbsent(Env.getAD_Language(Env.getCtx()), language -> new String[] {
+			Msg.getMsg(Env.getCtx(), "Y"),
+			Msg.getMsg(Env.getCtx(), "N")
+		});
+		return value? messages[0]: messages[1];
+	}
+
+	private FormatValues getFormat(int displayType, Language language, String pattern, boolean isDate) {
+		String key = (isDate? "D|": "N|") + displayType + "|" + language.getAD_Language() + "|" + pattern;
+		FormatValues format = formats.get(key);
+		if(format == null) {
+			if(isDate) {
+				format = new FormatValues(DisplayType.getDateFormat(displayType, language, pattern));
+			} else {
+				format = new FormatValues(DisplayType.getNumberFormat(displayType, language, pattern));
+			}
+			formats.put(key, format);
+		}
+		return format;
+	}
+
+	/**
+	 * Format with values already formatted
+	 */
+	private static class FormatValues {
+		private final Format format;
+		private final Map<Object, String> values;
+
+		private FormatValues(Format format) {
+			this.format = format;
+			this.values = new HashMap<Object, String>();
+		}
+
+		private String format(Object value) {
+			String formattedValue = values.get(value);
+			if(formattedValue == null) {
+				formattedValue = format.format(value);
+				if(values.size() < MAXIMUM_VALUES) {
+					values.put(value, formattedValue);
+				}
+			}
+			return formattedValue;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.compiere.util.Language;
+import org.spin.report_engine.format.LookupReference;
+import org.spin.report_engine.util.CursorUtil;
+
+/**
+ * Shared cache of display values for lookups resolved after read rows, by language.
+ * The least recently used values are removed when cache is full and the values
+ * not found are read with a query by reference for a list of keys
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class LookupCache {
+
+	/**	Default instance	*/
+	private static final LookupCache instance = new LookupCache();
+	/**	Maximum display values by language	*/
+	private static final int MAXIMUM_VALUES = 50000;
+	/**	Expire time of a value in minutes	*/
+	private static final int EXPIRE_MINUTES = 30;
+	/**	Maximum keys by query (Oracle limit for IN)	*/
+	private static final int MAXIMUM_KEYS_BY_QUERY = 1000;
+	/**	Display values by language	*/
+	private final Map<String, Map<String, DisplayValue>> values;
+	/**	Lookups of record identifiers by language and table, null for a table without lookup	*/
+	private final Map<String, LookupReference> recordReferences;
+
+	private LookupCache() {
+		values = new HashMap<String, Map<String, DisplayValue>>();
+		recordReferences = new HashMap<String, LookupReference>();
+	}
+
+	/**
+	 * Get current instance
+	 * @return
+	 */
+	public static LookupCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Get display values of keys for a reference, the values not cached are read from database
+	 * @param reference
+	 * @param keys
+	 * @param language
+	 * @param transactionName
+	 * @return display value by key as string
+	 */
+	public Map<String, String> getDisplayValues(LookupReference reference, Collection<Object> keys, String language, String transactionName) {
+		Map<String, String> displayValues = new HashMap<String, String>();
+		List<Object> missingKeys = new ArrayList<Object>();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			Map<String, DisplayValue> languageValues = getValues(language);
+			keys.forEach(key -> {
+				String lookupKey = getKey(key);
+				DisplayValue displayValue = languageValues.get(reference.getReferenceKey() + "|" + lookupKey);
+				if(displayValue != null && !displayValue.isExpired(now)) {
+					displayValues.put(lookupKey, displayValue.value);
+				} else {
+					missingKeys.add(key);
+				}
+			});
+		}
+		for (int fromIndex = 0; fromIndex < missingKeys.size(); fromIndex += MAXIMUM_KEYS_BY_QUERY) {
+			List<Object> queryKeys = missingKeys.subList(fromIndex, Math.min(fromIndex + MAXIMUM_KEYS_BY_QUERY, missingKeys.size()));
+			List<Object> parameters = new ArrayList<Object>(reference.getParameters());
+			parameters.addAll(queryKeys);
+			Map<String, String> loadedValues = new HashMap<String, String>();
+			CursorUtil.runCursor(transactionName, reference.getQuery(queryKeys.size()), parameters, resultSet -> {
+				while (resultSet.next()) {
+					loadedValues.put(getKey(resultSet.getObject(1)), resultSet.getString(2));
+				}
+			});
+			displayValues.putAll(loadedValues);
+			synchronized (this) {
+				Map<String, DisplayValue> languageValues = getValues(language);
+				loadedValues.forEach((key, value) -> languageValues.put(reference.getReferenceKey() + "|" + key, new DisplayValue(value, now)));
+			}
+		}
+		return displayValues;
+	}
+
+	/**
+	 * Get lookup for identifiers of records of a table (Record_ID)
+	 * @param tableName
+	 * @param language
+	 * @return lookup or null if table can not be resolved by lookup
+	 */
+	public LookupReference getRecordReference(String tableName, Language language) {
+		String key = language.getAD_Language() + "|" + tableName;
+		synchronized (this) {
+			if(recordReferences.containsKey(key)) {
+				return recordReferences.get(key);
+			}
+		}
+		LookupReference reference = LookupReference.getRecordLookupReference(tableName, language);
+		synchronized (this) {
+			recordReferences.put(key, reference);
+		}
+		return reference;
+	}
+
+	/**
+	 * Key of a value as string, the numbers are compared without scale
+	 * (a driver can return integer or decimal for same column)
+	 * @param key
+	 * @return
+	 */
+	public static String getKey(Object key) {
+		if(key instanceof BigDecimal) {
+			return ((BigDecimal) key).stripTrailingZeros().toPlainString();
+		}
+		if(key instanceof Number) {
+			return String.valueOf(((Number) key).longValue());
+		}
+		return String.valueOf(key);
+	}
+
+	private Map<String, DisplayValue> getValues(String language) {
+		Map<String, DisplayValue> languageValues = values.get(language);
+		if(languageValues == null) {
+			languageValues = new LinkedHashMap<String, DisplayValue>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, DisplayValue> eldest) {
+					return size() > MAXIMUM_VALUES;
+				}
+			};
+			values.put(language, languageValues);
+		}
+		return languageValues;
+	}
+
+	/**
+	 * Remove all display values
+	 * @return quantity of values removed
+	 */
+	public synchronized int reset() {
+		int size = values.values().stream().mapToInt(Map::size).sum();
+		values.clear();
+		recordReferences.clear();
+		return size;
+	}
+
+	/**
+	 * Display value with load time
+	 */
+	private static class DisplayValue {
+		private final String value;
+		private final long loaded;
+
+		private DisplayValue(String value, long loaded) {
+			this.value = value;
+			this.loaded = loaded;
+		}
+
+		private boolean isExpired(long now) {
+			return now - loaded > EXPIRE_MINUTES * 60000L;
+		}
+	}
+}
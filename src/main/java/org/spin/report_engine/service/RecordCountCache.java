@@ -0,0 +1,142 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.adempiere.exceptions.AdempiereException;
+import org.compiere.util.CCache;
+import org.compiere.util.CLogger;
+import org.compiere.util.Env;
+
+/**
+ * Exact record counts by query fingerprint. The count can be calculated in background
+ * while the rows are returned with an estimated count, then next pages or a request
+ * of count use the exact count
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class RecordCountCache {
+
+	/**	Default instance	*/
+	private static final RecordCountCache instance = new RecordCountCache();
+	/**	Expire time of count in minutes	*/
+	private static final int EXPIRE_MINUTES = 10;
+	/**	Threads for count in background	*/
+	private static final int COUNT_THREADS = 2;
+	/**	Counts by fingerprint	*/
+	private final CCache<String, CompletableFuture<Integer>> counts;
+	/**	Executor of background counts	*/
+	private final ExecutorService executor;
+
+	private static final CLogger logger = CLogger.getCLogger(RecordCountCache.class);
+
+	private RecordCountCache() {
+		counts = new CCache<String, CompletableFuture<Integer>>("ReportEngine_RecordCount", 50, EXPIRE_MINUTES);
+		executor = Executors.newFixedThreadPool(COUNT_THREADS, runnable -> {
+			Thread thread = new Thread(runnable, "ReportEngine-RecordCount");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Get current instance
+	 * @return
+	 */
+	public static RecordCountCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Get fingerprint of count query with parameters for client and role of context
+	 * @param countQuery
+	 * @param parameters
+	 * @return
+	 */
+	public String getFingerprint(String countQuery, List<Object> parameters) {
+		String key = Env.getAD_Client_ID(Env.getCtx())
+			+ "|" + Env.getAD_Role_ID(Env.getCtx())
+			+ "|" + countQuery
+			+ "|" + parameters
+		;
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuffer fingerprint = new StringBuffer();
+			for (byte value : hash) {
+				fingerprint.append(String.format("%02x", value));
+			}
+			return fingerprint.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new AdempiereException(e);
+		}
+	}
+
+	/**
+	 * Get exact count if it is already calculated
+	 * @param fingerprint
+	 * @return count or null if it is not calculated
+	 */
+	public synchronized Integer getExactCount(String fingerprint) {
+		CompletableFuture<Integer> count = counts.get(fingerprint);
+		if(count == null
+				|| !count.isDone()
+				|| count.isCompletedExceptionally()) {
+			return null;
+		}
+		return count.join();
+	}
+
+	/**
+	 * Get count in progress or calculated
+	 * @param fingerprint
+	 * @return
+	 */
+	public synchronized CompletableFuture<Integer> getCount(String fingerprint) {
+		return counts.get(fingerprint);
+	}
+
+	/**
+	 * Calculate count in background, if it is in progress then the same count is returned
+	 * @param fingerprint
+	 * @param counter
+	 * @return
+	 */
+	public synchronized CompletableFuture<Integer> countAsync(String fingerprint, Supplier<Integer> counter) {
+		CompletableFuture<Integer> count = counts.get(fingerprint);
+		if(count != null && !count.isCompletedExceptionally()) {
+			return count;
+		}
+		count = CompletableFuture.supplyAsync(counter, executor);
+		count.whenComplete((value, error) -> {
+			if(error != null) {
+				logger.warning("Record count failed: " + error.getLocalizedMessage());
+				removeCount(fingerprint);
+			}
+		});
+		counts.put(fingerprint, count);
+		return count;
+	}
+
+	private synchronized void removeCount(String fingerprint) {
+		counts.remove(fingerprint);
+	}
+}
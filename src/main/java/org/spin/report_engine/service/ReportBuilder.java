@@ -16,12 +16,13 @@ package org.spin.report_engine.service;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.adempiere.core.domains.models.I_AD_ChangeLog;
 import org.adempiere.core.domains.models.I_AD_PrintFormat;
 import org.adempiere.core.domains.models.I_AD_Process;
 import org.adempiere.exceptions.AdempiereException;
@@ -38,18 +39,29 @@ import org.compiere.print.MPrintFormat;
 import org.compiere.process.ProcessInfo;
 import org.compiere.process.ProcessInfoUtil;
 import org.compiere.util.CLogger;
-import org.compiere.util.DB;
 import org.compiere.util.Env;
 import org.compiere.util.Language;
 import org.compiere.util.Trx;
 import org.compiere.util.Util;
 import org.spin.report_engine.data.Cell;
 import org.spin.report_engine.data.ReportInfo;
+import org.spin.report_engine.data.ReportSummary;
+import org.spin.report_engine.data.ResultStore;
+import org.spin.report_engine.data.Row;
+import org.spin.report_engine.data.SummaryFunction;
+import org.spin.report_engine.data.SummaryHandler;
+import org.spin.report_engine.export.IReportEngineExporter;
+import org.spin.report_engine.format.LookupReference;
+import org.spin.report_engine.format.OrderByKey;
+import org.spin.report_engine.format.PageToken;
 import org.spin.report_engine.format.PrintFormat;
+import org.spin.report_engine.format.PrintFormatCache;
+import org.spin.report_engine.format.PrintFormatItem;
 import org.spin.report_engine.format.QueryDefinition;
-import org.spin.report_engine.mapper.DefaultMapping;
-import org.spin.report_engine.mapper.IColumnMapping;
-import org.spin.report_engine.util.ClassLoaderMapping;
+import org.spin.report_engine.format.RowBindingPlan;
+import org.spin.report_engine.format.SummaryQuery;
+import org.spin.report_engine.format.dialect.QueryDialect;
+import org.spin.report_engine.util.CursorUtil;
 import org.spin.report_engine.util.RecordUtil;
 import org.spin.service.grpc.util.db.CountUtil;
 import org.spin.service.grpc.util.db.ParameterUtil;
@@ -66,12 +78,15 @@ public class ReportBuilder {
 	private int reportId;
 	private int reportViewId;
 	private boolean isSummary;
+	private boolean isApproximateCount;
+	private boolean isDeferredLookup;
 	private List<Filter> conditions;
 	private int tableId;
 	private int recordId = -1; // Some records with zero are valid (`*` = all)
 	private int limit;
 	private int offset;
 	private int instanceId;
+	private PageToken pageToken;
 	
 	private static final CLogger logger = CLogger.getCLogger(ReportBuilder.class);
 	
@@ -120,6 +135,21 @@ public class ReportBuilder {
 	}
 
 
+	public PageToken getPageToken() {
+		return pageToken;
+	}
+
+	/**
+	 * Page token of previous page, it is used for keyset pagination
+	 * @param pageToken
+	 * @return
+	 */
+	public ReportBuilder withPageToken(PageToken pageToken) {
+		this.pageToken = pageToken;
+		return this;
+	}
+
+
 	public int getInstanceId() {
 		return instanceId;
 	}
@@ -149,8 +179,8 @@ public class ReportBuilder {
 	public ReportBuilder withPrintFormatId(int printFormatId) {
 		this.printFormatId = printFormatId;
 		if (printFormatId > 0) {
-			MPrintFormat printFormat = new MPrintFormat(Env.getCtx(), printFormatId, null);
-			if (printFormat == null || printFormat.getAD_PrintFormat_ID() <= 0) {
+			PrintFormat printFormat = PrintFormatCache.getInstance().get(printFormatId);
+			if (printFormat == null) {
 				throw new AdempiereException("@AD_PrintFormat_ID@ (" + printFormatId + ") @NotFound@");
 			}
 		}
@@ -200,78 +230,397 @@ public class ReportBuilder {
 	}
 
 
+	public boolean isApproximateCount() {
+		return isApproximateCount;
+	}
+
+	/**
+	 * Return an estimated count while the exact count is calculated in background,
+	 * it is used only for views, the reports have data of transaction
+	 * @param isApproximateCount
+	 * @return
+	 */
+	public ReportBuilder withApproximateCount(boolean isApproximateCount) {
+		this.isApproximateCount = isApproximateCount;
+		return this;
+	}
+
+
+	public boolean isDeferredLookup() {
+		return isDeferredLookup;
+	}
+
+	/**
+	 * Query only keys of references, the display values are resolved after read rows
+	 * from a shared cache of lookups
+	 * @param isDeferredLookup
+	 * @return
+	 */
+	public ReportBuilder withDeferredLookup(boolean isDeferredLookup) {
+		this.isDeferredLookup = isDeferredLookup;
+		return this;
+	}
+
+
 	private ReportInfo get(String transactionName) {
 		if(getPrintFormatId() <= 0) {
 			throw new AdempiereException("@FillMandatory@ @AD_PrintFormat_ID@");
 		}
 		Language language = Language.getLoginLanguage();
-		MPrintFormat printFormat = new MPrintFormat(Env.getCtx(), getPrintFormatId(), null);
-		PrintFormat format = PrintFormat.newInstance(printFormat);
+		PrintFormat format = PrintFormatCache.getInstance().get(getPrintFormatId());
+		if(format == null) {
+			throw new AdempiereException("@AD_PrintFormat_ID@ (" + getPrintFormatId() + ") @NotFound@");
+		}
 		if (this.getReportViewId() > 0) {
 			format.setReportViewId(this.getReportViewId());
 		}
-		QueryDefinition queryDefinition = format.getQuery()
+		QueryDefinition queryDefinition = format.getQuery(isDeferredLookup())
 			.withInstanceId(getInstanceId())
 			.withTableName(format.getTableName())
 			.withConditions(this.conditions)
 			.withWhereClause(format.getReportViewWhereClause())
 			.withLimit(limit, offset)
+			.withPageToken(getPageToken())
 			.buildQuery()
 		;
-		//	Count
-		int count = CountUtil.countRecords(queryDefinition.getCompleteQueryCount(), format.getTableName(), queryDefinition.getParameters(), transactionName);
 		ReportInfo reportInfo = ReportInfo.newInstance(format, queryDefinition)
 			.withReportViewId(getReportViewId())
 			.withInstanceId(getInstanceId())
-			.withRecordCount(count)
 			.withSummary(isSummary())
 		;
-		DB.runResultSet(transactionName, queryDefinition.getCompleteQuery(), queryDefinition.getParameters(), resulset -> {
+		//	Count
+		countRecords(reportInfo, queryDefinition, format.getTableName(), transactionName);
+		//	Without process the data is read from a read only connection, else from transaction of process
+		String cursorTransactionName = getReportId() > 0? transactionName: null;
+		//	Summary of all rows for summary report or pages, it is calculated by database.
+		//	The summary report needs rows of groups, they are only summarized for groups sorted by query
+		if(!Util.isEmpty(queryDefinition.getCompleteSummaryQuery(), true)
+				&& ((isSummary() && queryDefinition.isOrderedByGroups()) || (!isSummary() && queryDefinition.getLimit() != QueryDefinition.NO_LIMIT))) {
+			reportInfo.withReportSummary(getReportSummary(queryDefinition, cursorTransactionName));
+			if(isSummary()) {
+				return reportInfo.completeInfo();
+			}
+		}
+		RowBindingPlan bindingPlan = RowBindingPlan.newInstance(format.getItems(), queryDefinition);
+		final boolean isFinancialReport = format.getTableName().equals("T_Report");
+		final List<OrderByKey> orderByKeys = queryDefinition.getOrderByKeys();
+		final List<Object> lastKeyValues = new ArrayList<Object>();
+		AtomicInteger readRows = new AtomicInteger(0);
+		CursorUtil.runCursor(cursorTransactionName, queryDefinition.getCompleteQuery(), queryDefinition.getCompleteQueryParameters(), resulset -> {
+			bindingPlan.resolve(resulset);
+			final int levelIndex = isFinancialReport? resulset.findColumn("LevelNo"): -1;
+			final int sequenceIndex = isFinancialReport? resulset.findColumn("SeqNo"): -1;
+			final int[] keyIndexes = new int[orderByKeys.size()];
+			for (int keyIndex = 0; keyIndex < keyIndexes.length; keyIndex++) {
+				keyIndexes[keyIndex] = resulset.findColumn(orderByKeys.get(keyIndex).getAlias());
+			}
 			while (resulset.next()) {
-				format.getItems().forEach(item -> {
-					Map<String, Cell> cells = new HashMap<String, Cell>();
-					queryDefinition.getQueryColumns()
-					.stream()
-					.filter(column -> column.getColumnName().equals(item.getColumnName()))
-					.forEach(column -> {
-						Cell cell = Optional.ofNullable(cells.get(column.getColumnName())).orElse(Cell.newInstance());
-						try {
-							if(column.isDisplayValue()) {
-								cell.withDisplayValue(resulset.getString(column.getColumnNameAlias()));
-							} else {
-								Object value = resulset.getObject(column.getColumnName());
-								cell.withValue(value);
-								//	Apply Default Mask
-								if(!Util.isEmpty(item.getMappingClassName())) {
-									IColumnMapping customMapping = ClassLoaderMapping.loadClass(item.getMappingClassName());
-									if(customMapping != null) {
-										customMapping.processValue(item, column, language, resulset, cell);
-									}
-								} else {
-									DefaultMapping.newInstance().processValue(item, column, language, resulset, cell);
-								}
-							}
-						} catch (Exception e) {
-							logger.warning(e.getLocalizedMessage());
-						}
-						cells.put(item.getColumnName(), cell);
-					});
-					reportInfo.addCell(item, cells.get(item.getColumnName()));
-				});
-				if(format.getTableName().equals("T_Report")) {
-					reportInfo.addRow(resulset.getInt("LevelNo"), resulset.getInt("SeqNo"));
+				readRows.incrementAndGet();
+				if(keyIndexes.length > 0) {
+					lastKeyValues.clear();
+					for (int keyIndex : keyIndexes) {
+						lastKeyValues.add(resulset.getObject(keyIndex));
+					}
+				}
+				bindingPlan.bindRow(resulset, language, reportInfo::addCell);
+				if(isFinancialReport) {
+					reportInfo.addRow(resulset.getInt(levelIndex), resulset.getInt(sequenceIndex));
 				} else {
 					reportInfo.addRow();
 				}
 			}
-		}).onFailure(throwable -> {
-			throw new AdempiereException(throwable);
 		});
+		resolveLookups(reportInfo.getStore(), format.getItems(), queryDefinition, language, cursorTransactionName);
+		//	Token for next page
+		if(queryDefinition.getLimit() != QueryDefinition.NO_LIMIT
+				&& readRows.get() == queryDefinition.getLimit()) {
+			reportInfo.withNextPageToken(
+				PageToken.newInstance()
+					.withOffset(queryDefinition.getOffset() + readRows.get())
+					.withSignature(PageToken.getSignature(orderByKeys))
+					.withKeyValues(lastKeyValues)
+					.encode()
+			);
+		}
 		return reportInfo.completeInfo();
 	}
 
 
+	/**
+	 * Fill display values of lookups resolved after read rows, the keys not cached
+	 * are read with a query by reference
+	 * @param store
+	 * @param items
+	 * @param queryDefinition
+	 * @param language
+	 * @param transactionName
+	 */
+	private void resolveLookups(ResultStore store, List<PrintFormatItem> items, QueryDefinition queryDefinition, Language language, String transactionName) {
+		queryDefinition.getLookups().forEach((printFormatItemId, lookup) -> {
+			Map<String, Object> keys = new LinkedHashMap<String, Object>();
+			for (int index = 0; index < store.getSize(); index++) {
+				Object value = store.getCell(printFormatItemId, index).getValue();
+				if(value != null) {
+					keys.putIfAbsent(LookupCache.getKey(value), value);
+				}
+			}
+			if(keys.isEmpty()) {
+				return;
+			}
+			Map<String, String> displayValues = LookupCache.getInstance().getDisplayValues(lookup, keys.values(), language.getAD_Language(), transactionName);
+			for (int index = 0; index < store.getSize(); index++) {
+				Cell cell = store.getCell(printFormatItemId, index);
+				if(cell.getValue() == null || !Util.isEmpty(cell.getDisplayValue())) {
+					continue;
+				}
+				String displayValue = displayValues.get(LookupCache.getKey(cell.getValue()));
+				if(displayValue != null) {
+					store.setCell(printFormatItemId, index, cell.withDisplayValue(displayValue));
+				}
+			}
+		});
+		//	Record of any table
+		items.stream()
+			.filter(item -> I_AD_ChangeLog.COLUMNNAME_Record_ID.equals(item.getColumnName()))
+			.forEach(item -> resolveRecordLookups(store, item.getPrintFormatItemId(), language, transactionName));
+	}
+
+	/**
+	 * Fill display value of records (Record_ID), the records are grouped by table and
+	 * the identifiers are read with a query by table
+	 * @param store
+	 * @param printFormatItemId
+	 * @param language
+	 * @param transactionName
+	 */
+	private void resolveRecordLookups(ResultStore store, int printFormatItemId, Language language, String transactionName) {
+		Map<String, Map<String, Object>> keysByTable = new HashMap<String, Map<String, Object>>();
+		for (int index = 0; index < store.getSize(); index++) {
+			Cell cell = store.getCell(printFormatItemId, index);
+			if(cell.getValue() == null || Util.isEmpty(cell.getTableName(), true)) {
+				continue;
+			}
+			keysByTable.computeIfAbsent(cell.getTableName(), tableName -> new LinkedHashMap<String, Object>())
+				.putIfAbsent(LookupCache.getKey(cell.getValue()), cell.getValue());
+		}
+		Map<String, Map<String, String>> displayValuesByTable = new HashMap<String, Map<String, String>>();
+		keysByTable.forEach((tableName, keys) -> {
+			LookupReference reference = LookupCache.getInstance().getRecordReference(tableName, language);
+			//	Table not found or without single key
+			if(reference == null) {
+				logger.warning("Record lookup not resolved for table " + tableName);
+				displayValuesByTable.put(tableName, new HashMap<String, String>());
+				return;
+			}
+			displayValuesByTable.put(tableName, LookupCache.getInstance().getDisplayValues(reference, keys.values(), language.getAD_Language(), transactionName));
+		});
+		for (int index = 0; index < store.getSize(); index++) {
+			Cell cell = store.getCell(printFormatItemId, index);
+			if(cell.getValue() == null || Util.isEmpty(cell.getTableName(), true)) {
+				continue;
+			}
+			String displayValue = displayValuesByTable.get(cell.getTableName()).get(LookupCache.getKey(cell.getValue()));
+			if(displayValue != null) {
+				store.setCell(printFormatItemId, index, cell.withDisplayValue(displayValue));
+			}
+		}
+	}
+
+	/**
+	 * Set exact count of records or an estimated count when count is calculated in background
+	 * @param reportInfo
+	 * @param queryDefinition
+	 * @param tableName
+	 * @param transactionName
+	 */
+	private void countRecords(ReportInfo reportInfo, QueryDefinition queryDefinition, String tableName, String transactionName) {
+		String countQuery = queryDefinition.getCompleteQueryCount();
+		List<Object> parameters = queryDefinition.getCountQueryParameters();
+		//	Cached counts are only used when an approximate count is accepted
+		if(getReportId() > 0 || !isApproximateCount()) {
+			reportInfo.withRecordCount(CountUtil.countRecords(countQuery, tableName, parameters, transactionName));
+			return;
+		}
+		RecordCountCache countCache = RecordCountCache.getInstance();
+		String fingerprint = countCache.getFingerprint(countQuery, parameters);
+		reportInfo.withCountToken(fingerprint);
+		Integer count = countCache.getExactCount(fingerprint);
+		if(count != null) {
+			reportInfo.withRecordCount(count);
+			return;
+		}
+		countCache.countAsync(fingerprint, () -> CountUtil.countRecords(countQuery, tableName, parameters, null));
+		reportInfo.withRecordCount(QueryDialect.getInstance().getEstimatedCount(countQuery, tableName, parameters))
+			.withApproximateCount(true)
+		;
+	}
+
+	/**
+	 * Get summary of all rows from cache or run the aggregate query
+	 * @param queryDefinition
+	 * @param transactionName
+	 * @return
+	 */
+	private ReportSummary getReportSummary(QueryDefinition queryDefinition, String transactionName) {
+		SummaryQuery summaryQuery = queryDefinition.getSummaryQuery();
+		//	Report with process is changed for each instance, the cached summary is only
+		//	used when approximate values are accepted, as the record count
+		String key = null;
+		if(getReportId() <= 0 && isApproximateCount()) {
+			key = SummaryCache.getInstance().getKey(queryDefinition.getCompleteSummaryQuery(), queryDefinition.getSummaryQueryParameters());
+			ReportSummary reportSummary = SummaryCache.getInstance().get(key);
+			if(reportSummary != null) {
+				return reportSummary;
+			}
+		}
+		ReportSummary reportSummary = ReportSummary.newInstance(summaryQuery.getGroupItems(), summaryQuery.getSummarizedItems());
+		CursorUtil.runCursor(transactionName, queryDefinition.getCompleteSummaryQuery(), queryDefinition.getSummaryQueryParameters(), resulset -> {
+			while (resulset.next()) {
+				int groupLevel = summaryQuery.getGroupLevel(resulset);
+				//	Level of row is sequence of group item as summary rows of report
+				Row summaryRow = Row.newInstance()
+					.withLevel(groupLevel < 0? groupLevel: summaryQuery.getGroupItems().get(groupLevel).getSortSequence())
+					.withSummaryRow(true)
+				;
+				summaryQuery.bindRow(resulset, groupLevel, (item, cell) -> summaryRow.withCell(item.getPrintFormatItemId(), cell));
+				reportSummary.addRow(groupLevel, summaryRow);
+			}
+		});
+		if(key != null) {
+			SummaryCache.getInstance().put(key, reportSummary);
+		}
+		return reportSummary;
+	}
+
+
 	public ReportInfo run() {
+		validateReport();
+		AtomicReference<ReportInfo> reportInfo = new AtomicReference<ReportInfo>();
+		//	Run Process before get
+		Trx.run(transactionName -> {
+			runProcess(transactionName);
+			reportInfo.set(get(transactionName));
+		});
+		return reportInfo.get();
+	}
+
+
+	/**
+	 * Run report and send rows to exporter while are read from cursor, the rows are
+	 * not kept in a report info. If rows can not be exported in order of query
+	 * (summary report or groups not sorted by query) the complete report is exported
+	 * @param exporter
+	 * @return file path
+	 */
+	public String export(IReportEngineExporter exporter) {
+		validateReport();
+		AtomicReference<String> fileName = new AtomicReference<String>();
+		Trx.run(transactionName -> {
+			runProcess(transactionName);
+			fileName.set(export(exporter, transactionName));
+		});
+		return fileName.get();
+	}
+
+
+	private String export(IReportEngineExporter exporter, String transactionName) {
+		if(getPrintFormatId() <= 0) {
+			throw new AdempiereException("@FillMandatory@ @AD_PrintFormat_ID@");
+		}
+		Language language = Language.getLoginLanguage();
+		PrintFormat format = PrintFormatCache.getInstance().get(getPrintFormatId());
+		if(format == null) {
+			throw new AdempiereException("@AD_PrintFormat_ID@ (" + getPrintFormatId() + ") @NotFound@");
+		}
+		if (this.getReportViewId() > 0) {
+			format.setReportViewId(this.getReportViewId());
+		}
+		QueryDefinition queryDefinition = format.getQuery(isDeferredLookup())
+			.withInstanceId(getInstanceId())
+			.withTableName(format.getTableName())
+			.withConditions(this.conditions)
+			.withWhereClause(format.getReportViewWhereClause())
+			.withLimit(limit, offset)
+			.withPageToken(getPageToken())
+			.buildQuery()
+		;
+		//	Totals before rows are only known for all rows summarized by database
+		boolean isSummarizedByQuery = !Util.isEmpty(queryDefinition.getCompleteSummaryQuery(), true)
+			|| format.getItems().stream().allMatch(item -> SummaryFunction.getFunctions(item) == 0);
+		//	Rows are sorted by query only for groups sorted by query
+		if(isSummary()
+				|| format.getTableName().equals("T_Report")
+				|| (!format.getGroupItems().isEmpty() && !queryDefinition.isOrderedByGroups())
+				|| (exporter.isTotalsBeforeRows() && (limit != QueryDefinition.NO_LIMIT || !isSummarizedByQuery))) {
+			return exporter.export(get(transactionName));
+		}
+		ReportInfo reportInfo = ReportInfo.newInstance(format, queryDefinition)
+			.withReportViewId(getReportViewId())
+			.withInstanceId(getInstanceId())
+		;
+		String cursorTransactionName = getReportId() > 0? transactionName: null;
+		if(exporter.isTotalsBeforeRows()) {
+			countRecords(reportInfo, queryDefinition, format.getTableName(), transactionName);
+			if(!Util.isEmpty(queryDefinition.getCompleteSummaryQuery(), true)) {
+				reportInfo.withGrandTotal(getReportSummary(queryDefinition, cursorTransactionName).getTotals());
+			}
+		}
+		//	Temporary files of exporter are released if export is not completed
+		try {
+			exporter.begin(reportInfo);
+			//	Summary of group is written after its rows
+			SummaryHandler summaryHandler = SummaryHandler.newInstance(format.getItems())
+				.withGroupBreak(exporter::writeRow)
+			;
+			RowBindingPlan bindingPlan = RowBindingPlan.newInstance(format.getItems(), queryDefinition);
+			//	Rows are kept only by window for resolve lookups
+			final int windowSize = CursorUtil.getFetchSize();
+			AtomicReference<ResultStore> window = new AtomicReference<ResultStore>(ResultStore.newInstance(format.getItems()));
+			CursorUtil.runCursor(cursorTransactionName, queryDefinition.getCompleteQuery(), queryDefinition.getCompleteQueryParameters(), resulset -> {
+				bindingPlan.resolve(resulset);
+				while (resulset.next()) {
+					ResultStore store = window.get();
+					final int index = store.getSize();
+					bindingPlan.bindRow(resulset, language, (item, cell) -> store.setCell(item.getPrintFormatItemId(), index, cell));
+					store.addRow();
+					if(store.getSize() >= windowSize) {
+						writeRows(exporter, summaryHandler, store, reportInfo.getLevel(), format, queryDefinition, language, cursorTransactionName);
+						window.set(ResultStore.newInstance(format.getItems()));
+					}
+				}
+			});
+			writeRows(exporter, summaryHandler, window.get(), reportInfo.getLevel(), format, queryDefinition, language, cursorTransactionName);
+			summaryHandler.finish();
+			return exporter.end();
+		} catch (RuntimeException e) {
+			exporter.abort();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Write rows of a window to exporter, the summary of groups closed by a row is written before it
+	 * @param exporter
+	 * @param summaryHandler
+	 * @param store
+	 * @param level
+	 * @param format
+	 * @param queryDefinition
+	 * @param language
+	 * @param transactionName
+	 */
+	private void writeRows(IReportEngineExporter exporter, SummaryHandler summaryHandler, ResultStore store, int level, PrintFormat format, QueryDefinition queryDefinition, Language language, String transactionName) {
+		resolveLookups(store, format.getItems(), queryDefinition, language, transactionName);
+		for (int index = 0; index < store.getSize(); index++) {
+			Row row = Row.newInstance(store, index).withLevel(level);
+			summaryHandler.addRow(row);
+			exporter.writeRow(row);
+		}
+	}
+
+
+	private void validateReport() {
 		if (getReportId() <= 0 && getPrintFormatId() <= 0) {
 			throw new AdempiereException("@AD_Process_ID@ @NotFound@");
 		}
@@ -282,21 +631,19 @@ public class ReportBuilder {
 		if(getPrintFormatId() <= 0 && report.getAD_PrintFormat_ID() > 0) {
 			withPrintFormatId(report.getAD_PrintFormat_ID());
 		}
-		AtomicReference<ReportInfo> reportInfo = new AtomicReference<ReportInfo>();
-		//	Run Process before get
-		Trx.run(transactionName -> {
-			if(getReportId() > 0) {
-				ProcessInfo processInfo = generateProcessInfo(transactionName);
-				ReportProcessor.newInstance()
-					.withProcessInfo(processInfo)
-					.withTransactionName(transactionName)
-					.run()
-				;
-			}
-			validatePrintFormat(transactionName);
-			reportInfo.set(get(transactionName));
-		});
-		return reportInfo.get();
+	}
+
+
+	private void runProcess(String transactionName) {
+		if(getReportId() > 0) {
+			ProcessInfo processInfo = generateProcessInfo(transactionName);
+			ReportProcessor.newInstance()
+				.withProcessInfo(processInfo)
+				.withTransactionName(transactionName)
+				.run()
+			;
+		}
+		validatePrintFormat(transactionName);
 	}
 
 
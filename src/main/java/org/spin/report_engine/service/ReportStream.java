@@ -0,0 +1,251 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.service;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.compiere.util.Language;
+import org.spin.backend.grpc.report_engine.ReportColumn;
+import org.spin.backend.grpc.report_engine.ReportHeader;
+import org.spin.backend.grpc.report_engine.ReportRowBatch;
+import org.spin.backend.grpc.report_engine.ReportStreamResponse;
+import org.spin.report_engine.data.Cell;
+import org.spin.report_engine.data.ColumnInfo;
+import org.spin.report_engine.data.ReportInfo;
+import org.spin.report_engine.data.Row;
+import org.spin.report_engine.export.IReportEngineExporter;
+import org.spin.report_engine.format.QueryDefinition;
+import org.spin.report_engine.mapper.IColumnMapping;
+import org.spin.report_engine.mapper.MappingRegistry;
+import org.spin.service.grpc.util.value.StringManager;
+
+/**
+ * Report as a sequence of stream messages: a header with columns and counts
+ * followed by batches of rows. As exporter of report builder the rows are sent
+ * while are read from cursor, a batch is converted and sent when it is complete.
+ * The rows as tree are sent from the complete report because a parent is
+ * complete only after all rows are read
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class ReportStream implements IReportEngineExporter {
+
+	/**	Default rows by message	*/
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	/**	Maximum rows by message	*/
+	public static final int MAXIMUM_BATCH_SIZE = 5000;
+
+	private Consumer<ReportStreamResponse> sender;
+	private ReportInfo reportInfo;
+	private int batchSize;
+	private boolean isShowAsRows;
+	private int limit = QueryDefinition.NO_LIMIT;
+	private int offset;
+	private int pageNumber = 1;
+	private Language language;
+	private List<ColumnInfo> columns;
+	private IColumnMapping[] columnMappings;
+	private ReportRowBatch.Builder batch;
+
+	private ReportStream(Consumer<ReportStreamResponse> sender) {
+		this.sender = sender;
+		this.batchSize = DEFAULT_BATCH_SIZE;
+		this.language = Language.getLoginLanguage();
+	}
+
+	/**
+	 * New stream, the messages are sent to sender
+	 * @param sender
+	 * @return
+	 */
+	public static ReportStream newInstance(Consumer<ReportStreamResponse> sender) {
+		return new ReportStream(sender);
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public ReportStream withBatchSize(int batchSize) {
+		if(batchSize <= 0) {
+			this.batchSize = DEFAULT_BATCH_SIZE;
+		} else {
+			this.batchSize = Math.min(batchSize, MAXIMUM_BATCH_SIZE);
+		}
+		return this;
+	}
+
+	public boolean isShowAsRows() {
+		return isShowAsRows;
+	}
+
+	public ReportStream withShowAsRows(boolean isShowAsRows) {
+		this.isShowAsRows = isShowAsRows;
+		return this;
+	}
+
+	/**
+	 * Page requested, it is used for next page token
+	 * @param limit
+	 * @param offset
+	 * @param pageNumber
+	 * @return
+	 */
+	public ReportStream withPage(int limit, int offset, int pageNumber) {
+		this.limit = limit;
+		this.offset = offset;
+		this.pageNumber = pageNumber;
+		return this;
+	}
+
+	public ReportInfo getReportInfo() {
+		return reportInfo;
+	}
+
+	@Override
+	public boolean isTotalsBeforeRows() {
+		return true;
+	}
+
+	@Override
+	public String export(ReportInfo reportInfo) {
+		begin(reportInfo);
+		List<Row> rows = isShowAsRows? reportInfo.getCompleteRows(): reportInfo.getRowsAsTree();
+		rows.forEach(this::writeRow);
+		return end();
+	}
+
+	@Override
+	public void begin(ReportInfo reportInfo) {
+		this.reportInfo = reportInfo;
+		columns = reportInfo.getColumns();
+		MappingRegistry.RequestScope mappings = MappingRegistry.getInstance().newRequestScope();
+		columnMappings = columns.stream()
+			.map(columnInfo -> mappings.getMapping(columnInfo.getMappingClassName()))
+			.toArray(IColumnMapping[]::new)
+		;
+		batch = ReportRowBatch.newBuilder();
+		sender.accept(
+			ReportStreamResponse.newBuilder()
+				.setHeader(getHeader())
+				.build()
+		);
+	}
+
+	@Override
+	public void writeRow(Row row) {
+		//	Apply Mask, only for cells that are not mapped by report
+		for (int columnNumber = 0; columnNumber < columns.size(); columnNumber++) {
+			IColumnMapping mapping = columnMappings[columnNumber];
+			ColumnInfo columnInfo = columns.get(columnNumber);
+			Cell cell = row.getCell(columnInfo.getPrintFormatItemId());
+			if(mapping != null && !cell.isFormatted()) {
+				mapping.processValue(columnInfo.getPrintformatItem(), language, cell);
+				cell.withFormatted(true);
+				row.withCell(columnInfo.getPrintFormatItemId(), cell);
+			}
+		}
+		if(isShowAsRows) {
+			batch.addRows(Service.convertRow(columns, row));
+		} else {
+			batch.addRows(Service.processParent(columns, row));
+		}
+		if(batch.getRowsCount() >= batchSize) {
+			sendBatch();
+		}
+	}
+
+	@Override
+	public String end() {
+		if(batch.getRowsCount() > 0) {
+			sendBatch();
+		}
+		return null;
+	}
+
+	private void sendBatch() {
+		sender.accept(
+			ReportStreamResponse.newBuilder()
+				.setBatch(batch)
+				.build()
+		);
+		batch = ReportRowBatch.newBuilder();
+	}
+
+	private ReportHeader.Builder getHeader() {
+		List<ReportColumn> reportColumnsList = reportInfo.getColumns()
+			.stream()
+			.map(column -> {
+				return Service.convertColumn(column).build();
+			})
+			.collect(Collectors.toList())
+		;
+		ReportHeader.Builder builder = ReportHeader.newBuilder()
+			.setId(
+				reportInfo.getPrintFormatId()
+			)
+			.setName(
+				StringManager.getValidString(
+					reportInfo.getName()
+				)
+			)
+			.setDescription(
+				StringManager.getValidString(
+					reportInfo.getDescription()
+				)
+			)
+			.setPrintFormatId(
+				reportInfo.getPrintFormatId()
+			)
+			.setReportViewId(
+				reportInfo.getReportViewId()
+			)
+			.setRecordCount(
+				reportInfo.getRecordCount()
+			)
+			.addAllColumns(reportColumnsList)
+			.setNextPageToken(
+				StringManager.getValidString(
+					Service.getNextPageToken(reportInfo, limit, offset, pageNumber)
+				)
+			)
+			.setInstanceId(
+				reportInfo.getInstanceId()
+			)
+			.setTableName(
+				StringManager.getValidString(
+					reportInfo.getTableName()
+				)
+			)
+		;
+		builder.setIsApproximateCount(reportInfo.isApproximateCount())
+			.setCountToken(
+				StringManager.getValidString(
+					reportInfo.getCountToken()
+				)
+			)
+		;
+		if(reportInfo.getGrandTotalRow() != null) {
+			builder.setGrandTotal(
+				Service.convertRow(
+					reportInfo.getColumns(),
+					reportInfo.getGrandTotalRow()
+				)
+			);
+		}
+		return builder;
+	}
+}
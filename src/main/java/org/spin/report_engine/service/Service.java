@@ -18,6 +18,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.adempiere.core.domains.models.I_AD_Menu;
@@ -25,24 +30,33 @@ import org.adempiere.core.domains.models.I_AD_Process;
 import org.adempiere.exceptions.AdempiereException;
 import org.compiere.model.MProcess;
 import org.compiere.model.MRecentItem;
+import org.compiere.model.MSysConfig;
 import org.compiere.model.MTable;
 import org.compiere.model.Query;
-import org.compiere.print.MPrintFormat;
 import org.compiere.util.Env;
 import org.compiere.util.Util;
+import org.spin.backend.grpc.report_engine.RecordCount;
 import org.spin.backend.grpc.report_engine.ReportColumn;
 import org.spin.backend.grpc.report_engine.ReportRow;
+import org.spin.backend.grpc.report_engine.ReportStreamResponse;
+import org.spin.backend.grpc.report_engine.ResetCacheRequest;
+import org.spin.backend.grpc.report_engine.ResetCacheResponse;
 import org.spin.backend.grpc.report_engine.RunExportRequest;
 import org.spin.backend.grpc.report_engine.RunExportResponse;
 import org.spin.backend.grpc.report_engine.SystemInfo;
 import org.spin.base.Version;
+import org.spin.backend.grpc.report_engine.GetRecordCountRequest;
 import org.spin.backend.grpc.report_engine.GetReportRequest;
 import org.spin.backend.grpc.report_engine.Report;
 import org.spin.report_engine.data.Cell;
 import org.spin.report_engine.data.ColumnInfo;
 import org.spin.report_engine.data.ReportInfo;
 import org.spin.report_engine.data.Row;
+import org.spin.report_engine.export.CsvExporter;
+import org.spin.report_engine.export.IReportEngineExporter;
 import org.spin.report_engine.export.XlsxExporter;
+import org.spin.report_engine.format.PageToken;
+import org.spin.report_engine.format.PrintFormatCache;
 import org.spin.report_engine.format.QueryDefinition;
 import org.spin.report_engine.util.RecordUtil;
 import org.spin.service.grpc.authentication.SessionManager;
@@ -67,11 +81,19 @@ public class Service {
 	private static final String MAXIMUM_KEY = "maximum_value";
 	private static final String VARIANCE_KEY = "variance_value";
 	private static final String DEVIATION_KEY = "deviation_value";
+	/**	System configurator for upload the export from a temporary file	*/
+	private static final String EXPORT_TEMPORARY_FILE = "REPORT_ENGINE_EXPORT_TEMPORARY_FILE";
+	/**	Wait for count in background	*/
+	private static final long COUNT_WAIT_SECONDS = 10;
 
 
 	/** Supported file extensions to enable export */
 	public static final List<String> SUPPORTED_EXPORT_EXTENSIONS = Arrays.asList(
-		"xlsx"
+		"xlsx",
+		"csv",
+		"tsv",
+		"csv.gz",
+		"tsv.gz"
 	);
 
 
@@ -139,10 +161,6 @@ public class Service {
 		if(request.getPrintFormatId() <= 0) {
 			throw new AdempiereException("@FillMandatory@ @AD_PrintFormat_ID@");
 		}
-		MPrintFormat printFormat = new MPrintFormat(Env.getCtx(), request.getPrintFormatId(), null);
-		if (printFormat == null || printFormat.getAD_PrintFormat_ID() <= 0) {
-			throw new AdempiereException("@AD_PrintFormat_ID@ (" + request.getPrintFormatId() + ") @NotFound@");
-		}
 
 		//	Add to recent Item
 		if (request.getReportId() > 0) {
@@ -155,6 +173,8 @@ public class Service {
 			.withPrintFormatId(request.getPrintFormatId())
 			.withReportViewId(request.getReportViewId())
 			.withSummary(request.getIsSummary())
+			.withApproximateCount(request.getIsApproximateCount())
+			.withDeferredLookup(request.getIsDeferredLookup())
 			.withInstanceId(request.getInstanceId())
 		;
 
@@ -182,13 +202,15 @@ public class Service {
 		}
 
 		// Fill pagination
-		int pageNumber = LimitUtil.getPageNumber(SessionManager.getSessionUuid(), request.getPageToken());
+		PageToken pageToken = PageToken.decode(request.getPageToken());
 		int limit = LimitUtil.getPageSize(request.getPageSize());
-		int offset = (pageNumber - 1) * limit;
+		int pageNumber = pageToken != null? pageToken.getPageNumber(limit): LimitUtil.getPageNumber(SessionManager.getSessionUuid(), request.getPageToken());
+		int offset = pageToken != null? pageToken.getOffset(): (pageNumber - 1) * limit;
 
 		ReportInfo reportInfo = reportBuilder
 			.withLimit(limit)
 			.withOffset(offset)
+			.withPageToken(pageToken)
 			.run()
 		;
 		return convertReport(reportInfo, limit, offset, pageNumber, request.getShowAsRows());
@@ -220,6 +242,8 @@ public class Service {
 			.withPrintFormatId(request.getPrintFormatId())
 			.withReportViewId(request.getReportViewId())
 			.withSummary(request.getIsSummary())
+			.withApproximateCount(request.getIsApproximateCount())
+			.withDeferredLookup(request.getIsDeferredLookup())
 		;
 
 		// Parameters as filters
@@ -246,19 +270,170 @@ public class Service {
 		}
 
 		// Fill pagination
-		int pageNumber = LimitUtil.getPageNumber(SessionManager.getSessionUuid(), request.getPageToken());
+		PageToken pageToken = PageToken.decode(request.getPageToken());
 		int limit = LimitUtil.getPageSize(request.getPageSize());
-		int offset = (pageNumber - 1) * limit;
+		int pageNumber = pageToken != null? pageToken.getPageNumber(limit): LimitUtil.getPageNumber(SessionManager.getSessionUuid(), request.getPageToken());
+		int offset = pageToken != null? pageToken.getOffset(): (pageNumber - 1) * limit;
 
 		ReportInfo reportInfo = reportBuilder
 			.withLimit(limit)
 			.withOffset(offset)
+			.withPageToken(pageToken)
 			.run()
 		;
 		return convertReport(reportInfo, limit, offset, pageNumber, request.getShowAsRows());
 	}
 
 
+	/**
+	 * Run a report or view and send it as a stream of row batches, the rows as list
+	 * are sent while are read when the query sorts the groups
+	 * @param request
+	 * @param sender
+	 */
+	public static void getReportStream(GetReportRequest request, Consumer<ReportStreamResponse> sender) {
+		if(request.getReportId() <= 0 && request.getPrintFormatId() <= 0) {
+			throw new AdempiereException("@FillMandatory@ @AD_Process_ID@ / @AD_PrintFormat_ID@");
+		}
+		//	Add to recent Item
+		addToRecentItem(
+			request.getReportId()
+		);
+
+		ReportBuilder reportBuilder = ReportBuilder.newInstance()
+			.withReportId(request.getReportId())
+			.withPrintFormatId(request.getPrintFormatId())
+			.withReportViewId(request.getReportViewId())
+			.withSummary(request.getIsSummary())
+			.withApproximateCount(request.getIsApproximateCount())
+			.withDeferredLookup(request.getIsDeferredLookup())
+			.withInstanceId(request.getInstanceId())
+		;
+
+		// Parameters as filters
+		if(!Util.isEmpty(request.getFilters(), true)) {
+			List<Filter> conditionsList = FilterManager.newInstance(request.getFilters())
+				.getConditions()
+			;
+			reportBuilder.withFilters(conditionsList);
+		}
+
+		// Window table name and record identifier
+		if (!Util.isEmpty(request.getTableName(), true)) {
+			MTable table = RecordUtil.validateAndGetTable(
+				request.getTableName()
+			);
+			RecordUtil.validateRecordId(
+				request.getRecordId(),
+				table.getAccessLevel()
+			);
+			reportBuilder.withRecordId(
+				table.getAD_Table_ID(),
+				request.getRecordId()
+			);
+		}
+
+		// Fill pagination, without page size all rows are streamed
+		PageToken pageToken = PageToken.decode(request.getPageToken());
+		int pageNumber = 1;
+		int limit = QueryDefinition.NO_LIMIT;
+		int offset = 0;
+		if(request.getPageSize() > 0) {
+			limit = request.getPageSize();
+			pageNumber = pageToken != null? pageToken.getPageNumber(limit): LimitUtil.getPageNumber(SessionManager.getSessionUuid(), request.getPageToken());
+			offset = pageToken != null? pageToken.getOffset(): (pageNumber - 1) * limit;
+		}
+
+		ReportStream reportStream = ReportStream.newInstance(sender)
+			.withBatchSize(request.getBatchSize())
+			.withShowAsRows(request.getShowAsRows())
+			.withPage(limit, offset, pageNumber)
+		;
+		reportBuilder
+			.withLimit(limit)
+			.withOffset(offset)
+			.withPageToken(pageToken)
+		;
+		if(request.getShowAsRows()) {
+			reportBuilder.export(reportStream);
+		} else {
+			//	Tree is built from all rows
+			reportStream.export(reportBuilder.run());
+		}
+	}
+
+
+	/**
+	 * Reset cached print format definitions, the cached lookups are also reset for all print formats
+	 * @param request
+	 * @return
+	 */
+	public static ResetCacheResponse.Builder resetCache(ResetCacheRequest request) {
+		int resetCount;
+		if(request.getPrintFormatId() > 0) {
+			resetCount = PrintFormatCache.getInstance().reset(request.getPrintFormatId());
+		} else {
+			resetCount = PrintFormatCache.getInstance().reset();
+			LookupCache.getInstance().reset();
+		}
+		return ResetCacheResponse.newBuilder()
+			.setResetCount(resetCount)
+		;
+	}
+
+
+	/**
+	 * Get exact record count of a report requested with approximate count,
+	 * it wait for count in progress
+	 * @param request
+	 * @return
+	 */
+	public static RecordCount.Builder getRecordCount(GetRecordCountRequest request) {
+		if(Util.isEmpty(request.getCountToken(), true)) {
+			throw new AdempiereException("@FillMandatory@ @Count@");
+		}
+		CompletableFuture<Integer> count = RecordCountCache.getInstance().getCount(request.getCountToken());
+		if(count == null) {
+			throw new AdempiereException("@Count@ @NotFound@");
+		}
+		RecordCount.Builder builder = RecordCount.newBuilder()
+			.setCountToken(request.getCountToken())
+		;
+		//	Wait a limited time, the count in background can be slow
+		try {
+			builder.setRecordCount(count.get(COUNT_WAIT_SECONDS, TimeUnit.SECONDS));
+		} catch (TimeoutException e) {
+			builder.setIsPending(true);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AdempiereException(e);
+		} catch (ExecutionException e) {
+			throw new AdempiereException(e.getCause());
+		}
+		return builder;
+	}
+
+
+	/**
+	 * Get exporter for a supported extension
+	 * @param format
+	 * @param request
+	 * @return
+	 */
+	private static IReportEngineExporter getExporter(String format, RunExportRequest request) {
+		if("xlsx".equals(format)) {
+			//	File handlers that need the content length read the workbook from a temporary file
+			return XlsxExporter.newInstance()
+				.withTemporaryFile(
+					MSysConfig.getBooleanValue(EXPORT_TEMPORARY_FILE, false, Env.getAD_Client_ID(Env.getCtx()))
+				)
+				.withAutoSizeColumns(request.getIsAutoSizeColumns())
+			;
+		}
+		return CsvExporter.newInstance(format);
+	}
+
+
 	/**
 	 * Run Export Report
 	 * @param context
@@ -316,26 +491,29 @@ public class Service {
 		}
 
 		// Fill pagination
-		int pageNumber = LimitUtil.getPageNumber(SessionManager.getSessionUuid(), request.getPageToken());
+		PageToken pageToken = PageToken.decode(request.getPageToken());
+		int pageNumber = 1;
 		int limit = QueryDefinition.NO_LIMIT;
 		int offset = 0;
 		if(request.getPageSize() > 0) {
 			limit = request.getPageSize();
-			offset = (pageNumber - 1) * limit;
+			pageNumber = pageToken != null? pageToken.getPageNumber(limit): LimitUtil.getPageNumber(SessionManager.getSessionUuid(), request.getPageToken());
+			offset = pageToken != null? pageToken.getOffset(): (pageNumber - 1) * limit;
 		}
 
-		ReportInfo reportInfo = reportBuilder
+		//	Rows are written while are read
+		String fileName = reportBuilder
 			.withLimit(limit)
 			.withOffset(offset)
-			.run()
+			.withPageToken(pageToken)
+			.export(getExporter(format, request))
 		;
 		RunExportResponse.Builder builder = RunExportResponse.newBuilder()
 			.setInstanceId(
-				reportInfo.getInstanceId()
+				reportBuilder.getInstanceId()
 			)
 		;
 
-		String fileName = XlsxExporter.newInstance().export(reportInfo);
 		if (!Util.isEmpty(fileName, true)) {
 			builder
 				.setFileName(
@@ -417,12 +595,24 @@ public class Service {
 			});
 		}
 		builder.addAllRows(reportRows);
-		builder.setRecordCount(reportInfo.getRecordCount());
-		//	Set page token
-		String nexPageToken = null;
-		if(LimitUtil.isValidNextPageToken((int) reportInfo.getRecordCount(), offset, limit)) {
-			nexPageToken = LimitUtil.getPagePrefix("") + String.valueOf(pageNumber + 1);
+		if(reportInfo.getGrandTotalRow() != null) {
+			builder.setGrandTotal(
+				convertRow(
+					reportInfo.getColumns(),
+					reportInfo.getGrandTotalRow()
+				)
+			);
 		}
+		builder.setRecordCount(reportInfo.getRecordCount())
+			.setIsApproximateCount(reportInfo.isApproximateCount())
+			.setCountToken(
+				StringManager.getValidString(
+					reportInfo.getCountToken()
+				)
+			)
+		;
+		//	Set page token
+		String nexPageToken = getNextPageToken(reportInfo, limit, offset, pageNumber);
 		builder.setNextPageToken(
 			StringManager.getValidString(nexPageToken)
 		);
@@ -431,7 +621,26 @@ public class Service {
 	}
 
 
-	private static ReportColumn.Builder convertColumn(ColumnInfo column) {
+	static String getNextPageToken(ReportInfo reportInfo, int limit, int offset, int pageNumber) {
+		if(limit == QueryDefinition.NO_LIMIT) {
+			return null;
+		}
+		//	Estimated count is not valid for last page, the token is set when page is complete
+		if(reportInfo.isApproximateCount()) {
+			return reportInfo.getNextPageToken();
+		}
+		if(LimitUtil.isValidNextPageToken((int) reportInfo.getRecordCount(), offset, limit)) {
+			//	Stateless token with keyset of last row
+			if(!Util.isEmpty(reportInfo.getNextPageToken(), true)) {
+				return reportInfo.getNextPageToken();
+			}
+			return LimitUtil.getPagePrefix("") + String.valueOf(pageNumber + 1);
+		}
+		return null;
+	}
+
+
+	static ReportColumn.Builder convertColumn(ColumnInfo column) {
 		ReportColumn.Builder columnBuilder = ReportColumn.newBuilder()
 			.setCode(
 				StringManager.getValidString(
@@ -489,7 +698,7 @@ public class Service {
 	}
 
 
-	private static ReportRow.Builder convertRow(List<ColumnInfo> columns, Row row) {
+	static ReportRow.Builder convertRow(List<ColumnInfo> columns, Row row) {
 		Struct.Builder cells = Struct.newBuilder();
 		columns.forEach(column -> {
 			Struct.Builder cellValue = Struct.newBuilder();
@@ -547,7 +756,7 @@ public class Service {
 	}
 
 
-	private static ReportRow.Builder processParent(List<ColumnInfo> columns, Row row) {
+	static ReportRow.Builder processParent(List<ColumnInfo> columns, Row row) {
 		ReportRow.Builder parentRow = convertRow(columns, row);
 		row.getChildren().forEach(child -> {
 			processChildren(columns, parentRow, child);
@@ -0,0 +1,72 @@
+/************************************************************************************
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, C.A.                     *
+ * Contributor(s): Yamel Senih ysenih@erpya.com                                     *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU General Public License as published by             *
+ * the Free Software Foundation, either version 2 of the License, or                *
+ * (at your option) any later version.                                              *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the                     *
+ * GNU General Public License for more details.                                     *
+ * You should have received a copy of the GNU General Public License                *
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.            *
+ ************************************************************************************/
+package org.spin.report_engine.service;
+
+import java.util.List;
+
+import org.compiere.util.CCache;
+import org.compiere.util.Env;
+import org.spin.report_engine.data.ReportSummary;
+
+/**
+ * Cache of report summaries calculated over all rows of a query, then the pages of
+ * same report with same conditions use the summary calculated for first page
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class SummaryCache {
+
+	/**	Default instance	*/
+	private static final SummaryCache instance = new SummaryCache();
+	/**	Expire time of summary in minutes	*/
+	private static final int EXPIRE_MINUTES = 5;
+	/**	Summaries by query	*/
+	private final CCache<String, ReportSummary> summaries;
+
+	private SummaryCache() {
+		summaries = new CCache<String, ReportSummary>("ReportEngine_Summary", 50, EXPIRE_MINUTES);
+	}
+
+	/**
+	 * Get current instance
+	 * @return
+	 */
+	public static SummaryCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Get key of summary: query with parameters for client, role and language of context
+	 * @param query
+	 * @param parameters
+	 * @return
+	 */
+	public String getKey(String query, List<Object> parameters) {
+		return Env.getAD_Client_ID(Env.getCtx())
+			+ "|" + Env.getAD_Role_ID(Env.getCtx())
+			+ "|" + Env.getAD_Language(Env.getCtx())
+			+ "|" + query
+			+ "|" + parameters
+		;
+	}
+
+	public synchronized ReportSummary get(String key) {
+		return summaries.get(key);
+	}
+
+	public synchronized SummaryCache put(String key, ReportSummary summary) {
+		summaries.put(key, summary);
+		return this;
+	}
+}
@@ -46,6 +46,8 @@ public class Database {
 	private long keepalive_time;
 	/**	Connection Test Query	*/
 	private String connection_test_query;
+	/**	Rows by fetch for report cursors	*/
+	private int fetch_size;
 	
 	/**
 	 * Default constructor
@@ -142,6 +144,10 @@ public class Database {
 		return connection_test_query;
 	}
 
+	public int getFetch_size() {
+		return fetch_size;
+	}
+
 	@Override
 	public String toString() {
 		return "Database [host=" + host + ", port=" + port + ", user=" + user + ", password=******, name="
@@ -51,9 +51,12 @@ public class ClassLoaderMapping {
     }	//	getHandlerClass
 
 	public static IColumnMapping loadClass(String className) {
+		return newInstance(getHandlerClass(className));
+    }
+
+	public static IColumnMapping newInstance(Class<?> clazz) {
 		IColumnMapping mapping = null;
 		try {
-			Class<?> clazz = getHandlerClass(className);
 	        if (clazz != null) {
 	        	Constructor<?> constructor = clazz.getDeclaredConstructor();
 	        	mapping = (IColumnMapping) constructor.newInstance();
@@ -0,0 +1,105 @@
+/*************************************************************************************
+ * Product: Adempiere ERP & CRM Smart Business Solution                              *
+ * This program is free software; you can redistribute it and/or modify it           *
+ * under the terms version 2 or later of the GNU General Public License as published *
+ * by the Free Software Foundation. This program is distributed in the hope          *
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the implied        *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                  *
+ * See the GNU General Public License for more details.                              *
+ * You should have received a copy of the GNU General Public License along           *
+ * with this program; if not, write to the Free Software Foundation, Inc.,           *
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA.                            *
+ * For the text or an alternative of this public license, you may reach us           *
+ * Copyright (C) 2012-2018 E.R.P. Consultores y Asociados, S.A. All Rights Reserved. *
+ * Contributor(s): Yamel Senih www.erpya.com                                         *
+ *************************************************************************************/
+package org.spin.report_engine.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.adempiere.exceptions.AdempiereException;
+import org.compiere.util.CLogger;
+import org.compiere.util.DB;
+import org.compiere.util.Trx;
+import org.compiere.util.Util;
+import org.spin.report_engine.format.dialect.QueryDialect;
+import org.spin.report_engine.setup.SetupLoader;
+
+/**
+ * Read a query as a cursor: the statement is forward only, read only and with a fetch
+ * size, on a connection without auto commit, then the driver read rows by blocks
+ * (PostgreSQL only use a server side cursor when auto commit is disabled)
+ * instead of load all result in memory before first row
+ * @author Yamel Senih, ysenih@erpya.com, ERPCyA http://www.erpya.com
+ */
+public class CursorUtil {
+
+	/**	Default rows by fetch	*/
+	public static final int DEFAULT_FETCH_SIZE = 500;
+
+	private static final CLogger logger = CLogger.getCLogger(CursorUtil.class);
+
+	/**
+	 * Reader of result set
+	 */
+	@FunctionalInterface
+	public interface ResultSetReader {
+		public void read(ResultSet resultSet) throws SQLException;
+	}
+
+	/**
+	 * Get fetch size from setup, default 500
+	 * @return
+	 */
+	public static int getFetchSize() {
+		if(SetupLoader.getInstance() != null
+				&& SetupLoader.getInstance().getDatabase() != null
+				&& SetupLoader.getInstance().getDatabase().getFetch_size() > 0) {
+			return SetupLoader.getInstance().getDatabase().getFetch_size();
+		}
+		return DEFAULT_FETCH_SIZE;
+	}
+
+	/**
+	 * Run query as cursor. If transaction name is null a read only connection is used,
+	 * else the connection of transaction is used (it can see uncommitted data of process)
+	 * @param transactionName
+	 * @param sql
+	 * @param parameters
+	 * @param reader
+	 */
+	public static void runCursor(String transactionName, String sql, List<Object> parameters, ResultSetReader reader) {
+		Connection connection = null;
+		boolean isOwnConnection = Util.isEmpty(transactionName, true);
+		try {
+			if(isOwnConnection) {
+				connection = DB.createConnection(false, true, Connection.TRANSACTION_READ_COMMITTED);
+			} else {
+				connection = Trx.get(transactionName, false).getConnection();
+			}
+			try (PreparedStatement statement = QueryDialect.getInstance().prepareStatement(connection, sql)) {
+				statement.setFetchSize(getFetchSize());
+				DB.setParameters(statement, parameters);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					reader.read(resultSet);
+				}
+			}
+		} catch (SQLException e) {
+			logger.severe(sql + ": " + e.getLocalizedMessage());
+			throw new AdempiereException(e);
+		} finally {
+			if(isOwnConnection && connection != null) {
+				try {
+					connection.rollback();
+					connection.close();
+				} catch (SQLException e) {
+					logger.warning(e.getLocalizedMessage());
+				}
+			}
+		}
+	}
+}